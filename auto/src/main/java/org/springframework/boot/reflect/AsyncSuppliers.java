@@ -0,0 +1,386 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflect;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.aop.TargetSource;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.DelegatingIntroductionInterceptor;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.DefaultSingletonBeanRegistry;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.core.env.Environment;
+import org.springframework.util.StringUtils;
+
+/**
+ * Instance suppliers for beans that are created on a background thread. The dependencies
+ * of the bean are resolved on the calling thread (so the background thread never has to
+ * wait for the bean factory), then the <code>@Bean</code> method is called in the
+ * background and the bean factory gets a proxy whose target is the result. Other beans
+ * keep being created in the meantime, and the first call on the proxy waits for the real
+ * bean. Beans are selected with {@link AsyncBean @AsyncBean} or by name.
+ * <p>
+ * The bean factory only sees the proxy, so it only knows about the interfaces (and
+ * annotations) of the declared type, apart from destruction: the proxy is always a
+ * {@link DisposableBean} that waits for the real bean and destroys it as the bean factory
+ * would have done (including <code>@PreDestroy</code> methods and closing it). When the
+ * bean factory has finished creating its singletons it waits for the beans that are
+ * still being created, and if a <code>@Bean</code> method failed the failure is thrown
+ * from there, so the context fails to start as it would have done without the proxy.
+ * A bean that is created in the background after that (e.g. a lazy one) fails on every
+ * call on its proxy instead. The threads are shut down when the bean factory is
+ * destroyed.
+ *
+ * @author Dave Syer
+ *
+ */
+final class AsyncSuppliers {
+
+	/**
+	 * Comma-separated names of beans to create in the background, in addition to the ones
+	 * marked with {@link AsyncBean @AsyncBean}.
+	 */
+	static final String BEANS = "spring.functional.async.beans";
+
+	/**
+	 * The number of threads to use for creating beans in the background (default is the
+	 * number of available processors).
+	 */
+	static final String THREADS = "spring.functional.async.threads";
+
+	/**
+	 * The name of the singleton holding the suppliers in the bean factory.
+	 */
+	static final String BEAN_NAME = "org.springframework.boot.reflect.asyncSuppliers";
+
+	/**
+	 * The name of the bean that waits for the beans created in the background when the
+	 * bean factory has finished creating its singletons.
+	 */
+	static final String WAITER_BEAN_NAME =
+			"org.springframework.boot.reflect.asyncSuppliersWaiter";
+
+	private static final Log logger = LogFactory.getLog(AsyncSuppliers.class);
+
+	private final Set<String> names = new HashSet<>();
+
+	private final Map<String, CompletableFuture<Object>> futures = new ConcurrentHashMap<>();
+
+	private final int threads;
+
+	private ThreadPoolExecutor executor;
+
+	private volatile boolean waited;
+
+	private AsyncSuppliers(Environment environment) {
+		for (String name : StringUtils
+				.commaDelimitedListToSet(environment.getProperty(BEANS, ""))) {
+			if (StringUtils.hasText(name)) {
+				this.names.add(name.trim());
+			}
+		}
+		this.threads = environment.getProperty(THREADS, Integer.class,
+				Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * The suppliers for a bean factory.
+	 * @param beanFactory the bean factory
+	 * @param environment the environment
+	 * @return the suppliers
+	 */
+	static AsyncSuppliers get(ConfigurableListableBeanFactory beanFactory,
+			Environment environment) {
+		synchronized (beanFactory) {
+			if (!beanFactory.containsSingleton(BEAN_NAME)) {
+				AsyncSuppliers suppliers = new AsyncSuppliers(environment);
+				beanFactory.registerSingleton(BEAN_NAME, suppliers);
+				if (beanFactory instanceof DefaultSingletonBeanRegistry) {
+					// Registered early, so destroyed after the beans it created
+					((DefaultSingletonBeanRegistry) beanFactory)
+							.registerDisposableBean(BEAN_NAME, suppliers::destroy);
+				}
+			}
+			return (AsyncSuppliers) beanFactory.getSingleton(BEAN_NAME);
+		}
+	}
+
+	/**
+	 * Check if a bean should be created in the background.
+	 * @param name the bean name
+	 * @param method the <code>@Bean</code> method
+	 * @return true if it should
+	 */
+	boolean isAsync(String name, Method method) {
+		if (!this.names.contains(name)
+				&& AnnotationUtils.findAnnotation(method, AsyncBean.class) == null) {
+			return false;
+		}
+		Class<?> type = method.getReturnType();
+		if (type.isPrimitive() || type.isArray() || type == Object.class
+				|| (!type.isInterface() && Modifier.isFinal(type.getModifiers()))) {
+			logger.warn("Cannot create " + name + " in the background, because "
+					+ type.getName() + " cannot be proxied");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Create a supplier for a bean that resolves its dependencies when it is called, and
+	 * returns a proxy for the result of the plan, which is computed in the background.
+	 * @param beanFactory the bean factory
+	 * @param plan the plan for the bean
+	 * @param type the type of the bean
+	 * @return a supplier
+	 */
+	Supplier<Object> supplier(ConfigurableListableBeanFactory beanFactory,
+			InjectionPlan plan, Class<?> type) {
+		if (beanFactory instanceof BeanDefinitionRegistry
+				&& !beanFactory.containsBeanDefinition(WAITER_BEAN_NAME)) {
+			RootBeanDefinition definition = new RootBeanDefinition(Waiter.class);
+			definition.setRole(BeanDefinition.ROLE_INFRASTRUCTURE);
+			((BeanDefinitionRegistry) beanFactory)
+					.registerBeanDefinition(WAITER_BEAN_NAME, definition);
+		}
+		return () -> {
+			Supplier<Object> supplier = plan.prepare(beanFactory);
+			String name = plan.getBeanName();
+			CompletableFuture<Object> future = CompletableFuture.supplyAsync(supplier,
+					executor());
+			if (!this.waited) {
+				this.futures.put(name, future);
+			}
+			future.whenComplete((bean, error) -> {
+				if (error == null) {
+					this.futures.remove(name, future);
+				}
+				else if (this.waited) {
+					logger.error("Cannot create " + name + " in the background",
+							error.getCause() != null ? error.getCause() : error);
+				}
+			});
+			ProxyFactory factory = new ProxyFactory();
+			factory.setTargetSource(new FutureTargetSource(name, type, future));
+			if (type.isInterface()) {
+				factory.addInterface(type);
+			}
+			else {
+				factory.setProxyTargetClass(true);
+			}
+			factory.addAdvice(new DelegatingIntroductionInterceptor(
+					new FutureDestroyer(beanFactory, name, type, future)));
+			return factory.getProxy(type.getClassLoader());
+		};
+	}
+
+	/**
+	 * Wait for the beans that are being created in the background, and throw the first
+	 * failure. Later beans are not waited for.
+	 * @throws BeanCreationException if a bean could not be created
+	 */
+	void await() {
+		this.waited = true;
+		try {
+			for (Map.Entry<String, CompletableFuture<Object>> entry : this.futures
+					.entrySet()) {
+				try {
+					entry.getValue().get();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new BeanCreationException(entry.getKey(),
+							"Interrupted waiting for bean", e);
+				}
+				catch (ExecutionException e) {
+					throw new BeanCreationException(entry.getKey(),
+							"Cannot create bean in the background", e.getCause());
+				}
+			}
+		}
+		finally {
+			this.futures.clear();
+		}
+	}
+
+	private synchronized void destroy() {
+		if (this.executor != null) {
+			this.executor.shutdown();
+			this.executor = null;
+		}
+	}
+
+	private synchronized ThreadPoolExecutor executor() {
+		if (this.executor == null) {
+			AtomicInteger count = new AtomicInteger();
+			this.executor = new ThreadPoolExecutor(this.threads, this.threads, 1,
+					TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+						Thread thread = new Thread(runnable,
+								"spring-functional-async-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					});
+			// The threads also go away when they are idle
+			this.executor.allowCoreThreadTimeOut(true);
+		}
+		return this.executor;
+	}
+
+	/**
+	 * Waits for the beans created in the background when the bean factory has finished
+	 * creating its singletons.
+	 */
+	static class Waiter implements SmartInitializingSingleton, BeanFactoryAware {
+
+		private ConfigurableListableBeanFactory beanFactory;
+
+		@Override
+		public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+			this.beanFactory = (ConfigurableListableBeanFactory) beanFactory;
+		}
+
+		@Override
+		public void afterSingletonsInstantiated() {
+			if (this.beanFactory.containsSingleton(BEAN_NAME)) {
+				((AsyncSuppliers) this.beanFactory.getSingleton(BEAN_NAME)).await();
+			}
+		}
+
+	}
+
+	/**
+	 * Destroys the real bean when the bean factory destroys the proxy. The bean factory
+	 * applies the destruction callbacks it can see on the proxy, so they are not applied
+	 * again: with a class based proxy that includes the <code>@PreDestroy</code> methods
+	 * of the declared type, and with an interface based one nothing.
+	 */
+	private static class FutureDestroyer implements DisposableBean {
+
+		private final ConfigurableListableBeanFactory beanFactory;
+
+		private final String beanName;
+
+		private final Class<?> type;
+
+		private final CompletableFuture<Object> future;
+
+		FutureDestroyer(ConfigurableListableBeanFactory beanFactory, String beanName,
+				Class<?> type, CompletableFuture<Object> future) {
+			this.beanFactory = beanFactory;
+			this.beanName = beanName;
+			this.type = type;
+			this.future = future;
+		}
+
+		@Override
+		public void destroy() throws Exception {
+			Object bean;
+			try {
+				bean = this.future.get();
+			}
+			catch (ExecutionException e) {
+				// Already logged, and there is nothing to destroy
+				return;
+			}
+			if (this.type.isInterface()) {
+				this.beanFactory.destroyBean(bean);
+			}
+			else if (bean instanceof DisposableBean) {
+				((DisposableBean) bean).destroy();
+			}
+			if (!(bean instanceof DisposableBean) && bean instanceof AutoCloseable) {
+				logger.debug("Closing " + this.beanName);
+				((AutoCloseable) bean).close();
+			}
+		}
+
+	}
+
+	private static class FutureTargetSource implements TargetSource {
+
+		private final String beanName;
+
+		private final Class<?> type;
+
+		private final CompletableFuture<Object> future;
+
+		FutureTargetSource(String beanName, Class<?> type,
+				CompletableFuture<Object> future) {
+			this.beanName = beanName;
+			this.type = type;
+			this.future = future;
+		}
+
+		@Override
+		public Class<?> getTargetClass() {
+			return this.type;
+		}
+
+		@Override
+		public boolean isStatic() {
+			// Otherwise a proxy might ask for the target when it is created
+			return false;
+		}
+
+		@Override
+		public Object getTarget() throws Exception {
+			try {
+				return this.future.get();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new BeanCreationException(this.beanName,
+						"Interrupted waiting for bean", e);
+			}
+			catch (ExecutionException e) {
+				throw new BeanCreationException(this.beanName,
+						"Cannot create bean in the background", e.getCause());
+			}
+		}
+
+		@Override
+		public void releaseTarget(Object target) {
+		}
+
+	}
+
+}
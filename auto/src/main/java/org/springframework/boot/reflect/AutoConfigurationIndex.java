@@ -0,0 +1,295 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflect;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+import org.springframework.boot.autoconfigure.AutoConfigurationImportFilter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.core.type.classreading.CachingMetadataReaderFactory;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+import org.springframework.util.StringUtils;
+
+/**
+ * An index of the autoconfigurations generated at build time (e.g. by the
+ * {@code spring-boot-auto-reflect-maven-plugin}), so that they do not have to be loaded
+ * from <code>spring.factories</code>, filtered and sorted on every start. For each
+ * candidate, and each of its nested and imported classes, the index holds the class
+ * names required by <code>@ConditionalOnClass</code>. Those are assigned bits in a
+ * table, so a class whose requirements are not all present can be dropped without
+ * loading it, or even reading its metadata.
+ *
+ * @author Dave Syer
+ *
+ */
+public final class AutoConfigurationIndex {
+
+	/**
+	 * The location of the index in the classpath.
+	 */
+	public static final String LOCATION = "META-INF/spring-functional.index";
+
+	/**
+	 * Flag to switch off the use of the index if there is one (default true).
+	 */
+	static final String ENABLED = "spring.functional.index.enabled";
+
+	private static final String CANDIDATES = "candidates";
+
+	private static final String ON_CLASS = ".onClass";
+
+	private final String[] candidates;
+
+	private final String[] required;
+
+	private final Map<String, BitSet> requirements = new HashMap<>();
+
+	private final Predicate<String> present;
+
+	private volatile BitSet missing;
+
+	AutoConfigurationIndex(Properties properties, Predicate<String> present) {
+		this.present = present;
+		this.candidates = StringUtils
+				.commaDelimitedListToStringArray(properties.getProperty(CANDIDATES));
+		Map<String, Integer> bits = new LinkedHashMap<>();
+		for (String key : properties.stringPropertyNames()) {
+			if (!key.endsWith(ON_CLASS)) {
+				continue;
+			}
+			BitSet requirement = new BitSet();
+			for (String name : StringUtils
+					.commaDelimitedListToStringArray(properties.getProperty(key))) {
+				Integer bit = bits.get(name);
+				if (bit == null) {
+					bit = bits.size();
+					bits.put(name, bit);
+				}
+				requirement.set(bit);
+			}
+			this.requirements.put(key.substring(0, key.length() - ON_CLASS.length()),
+					requirement);
+		}
+		this.required = StringUtils.toStringArray(bits.keySet());
+	}
+
+	/**
+	 * Load the index from the class loader provided, unless it is switched off in the
+	 * environment.
+	 * @param classLoader the class loader
+	 * @param environment the environment
+	 * @param present a check for the presence of a class
+	 * @return the index or null if there is none
+	 */
+	static AutoConfigurationIndex load(ClassLoader classLoader, Environment environment,
+			Predicate<String> present) {
+		if (!environment.getProperty(ENABLED, Boolean.class, true)) {
+			return null;
+		}
+		URL url = classLoader.getResource(LOCATION);
+		if (url == null) {
+			return null;
+		}
+		Properties properties = new Properties();
+		try (InputStream stream = url.openStream()) {
+			properties.load(stream);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot load index from " + url, e);
+		}
+		return new AutoConfigurationIndex(properties, present);
+	}
+
+	/**
+	 * The sorted candidates, excluding those whose required classes are missing.
+	 * @param exclusions the names of candidates to exclude
+	 * @return the candidate names
+	 */
+	String[] getCandidates(Collection<String> exclusions) {
+		BitSet missing = missing();
+		List<String> result = new ArrayList<>(this.candidates.length);
+		for (String candidate : this.candidates) {
+			if (!exclusions.contains(candidate) && matches(candidate, missing)) {
+				result.add(candidate);
+			}
+		}
+		return StringUtils.toStringArray(result);
+	}
+
+	/**
+	 * Check if the classes required by the class provided are all present.
+	 * @param className the name of an autoconfiguration or one of its nested or imported
+	 * classes
+	 * @return false if the class is in the index and a required class is missing
+	 */
+	boolean matches(String className) {
+		return matches(className, missing());
+	}
+
+	private boolean matches(String className, BitSet missing) {
+		BitSet requirement = this.requirements.get(className);
+		return requirement == null || !requirement.intersects(missing);
+	}
+
+	private BitSet missing() {
+		BitSet missing = this.missing;
+		if (missing == null) {
+			missing = new BitSet(this.required.length);
+			for (int i = 0; i < this.required.length; i++) {
+				if (!this.present.test(this.required[i])) {
+					missing.set(i);
+				}
+			}
+			this.missing = missing;
+		}
+		return missing;
+	}
+
+	/**
+	 * Generate an index for the autoconfigurations in a class loader. The candidates are
+	 * sorted, but not filtered, so the index does not depend on which classes are present
+	 * at build time.
+	 * @param classLoader the class loader of the application
+	 * @param outputDirectory the directory to write the index to (the root of the
+	 * classpath, e.g. <code>target/classes</code>)
+	 * @return the index file
+	 * @throws IOException if the index cannot be written
+	 */
+	public static File generate(ClassLoader classLoader, File outputDirectory)
+			throws IOException {
+		GenericApplicationContext context = new GenericApplicationContext();
+		context.setClassLoader(classLoader);
+		context.getEnvironment().getPropertySources().addFirst(new MapPropertySource(
+				"index", Collections.singletonMap(ENABLED, "false")));
+		String[] candidates = new AutoConfigurations(context) {
+			@Override
+			protected List<AutoConfigurationImportFilter> getAutoConfigurationImportFilters() {
+				return Collections.emptyList();
+			}
+		}.config();
+		Map<String, String> index = new TreeMap<>();
+		index.put(CANDIDATES, StringUtils.arrayToCommaDelimitedString(candidates));
+		MetadataReaderFactory factory = new CachingMetadataReaderFactory(classLoader);
+		Set<String> seen = new LinkedHashSet<>();
+		for (String candidate : candidates) {
+			describe(factory, candidate, index, seen);
+		}
+		File file = new File(outputDirectory, LOCATION);
+		file.getParentFile().mkdirs();
+		try (OutputStream stream = new FileOutputStream(file)) {
+			stream.write(store(index));
+		}
+		ClassPathIndex.generate(classLoader, outputDirectory);
+		return file;
+	}
+
+	/**
+	 * The index in properties format, with the keys sorted and without the timestamp
+	 * that {@link Properties#store} adds, so the same classpath gives the same bytes.
+	 */
+	private static byte[] store(Map<String, String> index) throws IOException {
+		Properties properties = new Properties();
+		properties.putAll(index);
+		ByteArrayOutputStream stored = new ByteArrayOutputStream();
+		// Escapes anything that is not ISO 8859-1, as load() expects
+		properties.store(stored, null);
+		Set<String> lines = new TreeSet<>();
+		for (String line : new String(stored.toByteArray(), StandardCharsets.ISO_8859_1)
+				.split("\n")) {
+			line = line.trim();
+			if (!line.isEmpty() && !line.startsWith("#")) {
+				lines.add(line);
+			}
+		}
+		StringBuilder result = new StringBuilder("# Autoconfiguration index\n");
+		for (String line : lines) {
+			result.append(line).append("\n");
+		}
+		return result.toString().getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	private static void describe(MetadataReaderFactory factory, String className,
+			Map<String, String> index, Set<String> seen) {
+		if (!seen.add(className)) {
+			return;
+		}
+		AnnotationMetadata metadata;
+		try {
+			metadata = factory.getMetadataReader(className).getAnnotationMetadata();
+		}
+		catch (IOException e) {
+			// Not on the classpath at build time
+			return;
+		}
+		Set<String> required = new LinkedHashSet<>();
+		Map<String, Object> attributes = metadata
+				.getAnnotationAttributes(ConditionalOnClass.class.getName(), true);
+		if (attributes != null) {
+			for (String name : new String[] { "value", "name" }) {
+				String[] values = (String[]) attributes.get(name);
+				if (values != null) {
+					Collections.addAll(required, values);
+				}
+			}
+		}
+		if (!required.isEmpty()) {
+			index.put(className + ON_CLASS,
+					StringUtils.collectionToCommaDelimitedString(required));
+		}
+		// Nested and imported classes are found from the metadata at runtime, but if
+		// their required classes are missing they are skipped without reading it
+		String[] nested = metadata.getMemberClassNames();
+		String[] imports = new String[0];
+		if (metadata.hasAnnotation(Import.class.getName())) {
+			imports = (String[]) metadata
+					.getAnnotationAttributes(Import.class.getName(), true).get("value");
+		}
+		for (String name : nested) {
+			describe(factory, name, index, seen);
+		}
+		for (String name : imports) {
+			describe(factory, name, index, seen);
+		}
+	}
+
+}
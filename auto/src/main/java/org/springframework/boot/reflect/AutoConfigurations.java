@@ -16,33 +16,82 @@
 
 package org.springframework.boot.reflect;
 
+import java.io.File;
 import java.lang.annotation.Documented;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Inherited;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanClassLoaderAware;
 import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.BeanFactoryAware;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
 import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.boot.autoconfigure.AutoConfigurationImportEvent;
+import org.springframework.boot.autoconfigure.AutoConfigurationImportListener;
 import org.springframework.boot.autoconfigure.AutoConfigurationImportSelector;
 import org.springframework.boot.autoconfigure.AutoConfigurationPackage;
+import org.springframework.boot.autoconfigure.condition.ConditionEvaluationReport;
 import org.springframework.boot.reflect.AutoConfigurations.EnableActuatorAutoConfigurations;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.context.ResourceLoaderAware;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DeferredImportSelector.Group;
 import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.annotation.AnnotationAttributes;
+import org.springframework.core.type.AnnotationMetadata;
 import org.springframework.core.type.StandardAnnotationMetadata;
 import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
 
 @Configuration
 @EnableActuatorAutoConfigurations
 class AutoConfigurations extends AutoConfigurationImportSelector
 		implements BeanDefinitionRegistryPostProcessor {
 
+	/**
+	 * Flag to switch on parallel evaluation of the conditions on autoconfiguration
+	 * classes that do not depend on the bean registry (default false).
+	 */
+	static final String PARALLEL_ENABLED = "spring.functional.parallel.enabled";
+
+	/**
+	 * The number of threads to use for parallel condition evaluation (default is the
+	 * number of available processors, which honours the container CPU quota on recent
+	 * JVMs).
+	 */
+	static final String PARALLEL_THREADS = "spring.functional.parallel.threads";
+
+	/**
+	 * Comma-separated names of the only autoconfiguration classes that are allowed to
+	 * run (default is to allow all of them). Their nested and imported classes are still
+	 * processed. Exclusions and conditions still apply to the ones that are listed.
+	 */
+	static final String INCLUDE = "spring.functional.autoconfigure.include";
+
 	private GenericApplicationContext context;
 
+	private Set<String> registered = new LinkedHashSet<>();
+
+	private AutoConfigurationIndex index;
+
+	private boolean indexed;
+
+	private String[] candidates = new String[0];
+
+	private Set<String> include;
+
 	public AutoConfigurations(GenericApplicationContext applicationContext) {
 		this.context = applicationContext;
 		setBeanFactory(applicationContext.getDefaultListableBeanFactory());
@@ -51,19 +100,138 @@ class AutoConfigurations extends AutoConfigurationImportSelector
 		setResourceLoader(applicationContext);
 	}
 
-	public Class<?>[] config() {
-		String[] imports = selectImports(
-				new StandardAnnotationMetadata(AutoConfigurations.class));
-		Class<?>[] types = new Class<?>[imports.length];
-		int i = 0;
-		for (String config : imports) {
-			Class<?> type = ClassUtils.resolveClassName(config, getBeanClassLoader());
-			types[i++] = type;
-		}
-		org.springframework.boot.autoconfigure.AutoConfigurations autos = org.springframework.boot.autoconfigure.AutoConfigurations
-				.of(types);
-		return org.springframework.boot.autoconfigure.AutoConfigurations
-				.getClasses(autos);
+	/**
+	 * The names of the autoconfiguration candidates, filtered and sorted in the same way
+	 * as when they are imported by <code>@EnableAutoConfiguration</code>. None of the
+	 * candidate classes is loaded.
+	 * @return the sorted autoconfiguration class names
+	 */
+	public String[] config() {
+		AutoConfigurationIndex index = index();
+		if (index != null) {
+			AnnotationMetadata metadata = new StandardAnnotationMetadata(
+					AutoConfigurations.class);
+			Set<String> exclusions = getExclusions(metadata, getAttributes(metadata));
+			String[] candidates = include(index.getCandidates(exclusions));
+			fireImportEvents(Arrays.asList(candidates), exclusions);
+			return candidates;
+		}
+		Group group = BeanUtils.instantiateClass(getImportGroup());
+		if (group instanceof BeanClassLoaderAware) {
+			((BeanClassLoaderAware) group).setBeanClassLoader(getBeanClassLoader());
+		}
+		if (group instanceof BeanFactoryAware) {
+			((BeanFactoryAware) group).setBeanFactory(getBeanFactory());
+		}
+		if (group instanceof ResourceLoaderAware) {
+			((ResourceLoaderAware) group).setResourceLoader(getResourceLoader());
+		}
+		group.process(new StandardAnnotationMetadata(AutoConfigurations.class), this);
+		List<String> names = new ArrayList<>();
+		for (Group.Entry entry : group.selectImports()) {
+			names.add(entry.getImportClassName());
+		}
+		return StringUtils.toStringArray(names);
+	}
+
+	/**
+	 * Tell the import listeners (e.g. the one that records the candidates and exclusions
+	 * in the {@link ConditionEvaluationReport}) about the candidates from the index, as
+	 * the superclass does for the ones it selects.
+	 */
+	private void fireImportEvents(List<String> candidates, Set<String> exclusions) {
+		List<AutoConfigurationImportListener> listeners = getAutoConfigurationImportListeners();
+		if (listeners.isEmpty()) {
+			return;
+		}
+		AutoConfigurationImportEvent event = new AutoConfigurationImportEvent(this,
+				candidates, exclusions);
+		for (AutoConfigurationImportListener listener : listeners) {
+			if (listener instanceof BeanClassLoaderAware) {
+				((BeanClassLoaderAware) listener).setBeanClassLoader(getBeanClassLoader());
+			}
+			if (listener instanceof BeanFactoryAware) {
+				((BeanFactoryAware) listener).setBeanFactory(getBeanFactory());
+			}
+			if (listener instanceof EnvironmentAware) {
+				((EnvironmentAware) listener).setEnvironment(getEnvironment());
+			}
+			if (listener instanceof ResourceLoaderAware) {
+				((ResourceLoaderAware) listener).setResourceLoader(getResourceLoader());
+			}
+			listener.onAutoConfigurationImportEvent(event);
+		}
+	}
+
+	@Override
+	protected List<String> getCandidateConfigurations(AnnotationMetadata metadata,
+			AnnotationAttributes attributes) {
+		// Before the import filters, so nothing else is even checked for presence
+		return new ArrayList<>(Arrays.asList(include(StringUtils.toStringArray(
+				super.getCandidateConfigurations(metadata, attributes)))));
+	}
+
+	private String[] include(String[] candidates) {
+		Set<String> include = include();
+		if (include.isEmpty()) {
+			return candidates;
+		}
+		List<String> result = new ArrayList<>(include.size());
+		for (String candidate : candidates) {
+			if (include.contains(candidate)) {
+				result.add(candidate);
+			}
+		}
+		return StringUtils.toStringArray(result);
+	}
+
+	private Set<String> include() {
+		if (this.include == null) {
+			Set<String> include = new HashSet<>();
+			for (String name : StringUtils.commaDelimitedListToSet(
+					getEnvironment().getProperty(INCLUDE, ""))) {
+				if (StringUtils.hasText(name)) {
+					include.add(name.trim());
+				}
+			}
+			this.include = include;
+		}
+		return this.include;
+	}
+
+	@Override
+	protected Set<String> getExclusions(AnnotationMetadata metadata,
+			AnnotationAttributes attributes) {
+		Set<String> exclusions = super.getExclusions(metadata, attributes);
+		exclusions.addAll(
+				UsageRecorder.exclusions(getBeanClassLoader(), getEnvironment()));
+		return exclusions;
+	}
+
+	@Override
+	protected void handleInvalidExcludes(List<String> invalidExcludes) {
+		// A manifest might be out of date, but that is not a reason to fail
+		List<String> invalid = new ArrayList<>(invalidExcludes);
+		invalid.removeAll(
+				UsageRecorder.exclusions(getBeanClassLoader(), getEnvironment()));
+		if (!invalid.isEmpty()) {
+			super.handleInvalidExcludes(invalid);
+		}
+	}
+
+	private AutoConfigurationIndex index() {
+		if (!this.indexed) {
+			ClassLoader classLoader = getBeanClassLoader();
+			ClassPathIndex classPath = ClassPathIndex.get(getBeanFactory(), classLoader,
+					getEnvironment());
+			this.index = SharedCaches
+					.get(getBeanFactory(), classLoader, getEnvironment())
+					.getAutoConfigurationIndex(getEnvironment(),
+							classPath != null ? classPath::isPresent
+									: name -> ClassUtils.isPresent(name, classLoader));
+			this.indexed = true;
+		}
+		return this.index;
 	}
 
 	@Target(ElementType.TYPE)
@@ -85,13 +253,34 @@ class AutoConfigurations extends AutoConfigurationImportSelector
 	@Override
 	public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory)
 			throws BeansException {
+		if (UsageRecorder.isEnabled(getEnvironment())) {
+			// Training needs to see all the beans created eagerly
+			UsageRecorder.install(this.context, this.candidates);
+		}
+		else {
+			if (BackgroundInitializer.isEnabled(getEnvironment())) {
+				new BackgroundInitializer(this.context).defer(beanFactory,
+						this.registered);
+			}
+			if (ParallelInstantiator.isEnabled(getEnvironment())) {
+				// After the background initializer, which makes some beans lazy
+				ParallelInstantiator.install(this.context);
+			}
+		}
 	}
 
 	@Override
 	public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry)
 			throws BeansException {
 		try {
+			Set<String> existing = new HashSet<>(
+					Arrays.asList(registry.getBeanDefinitionNames()));
 			register(registry, this.context.getDefaultListableBeanFactory());
+			for (String name : registry.getBeanDefinitionNames()) {
+				if (!existing.contains(name)) {
+					this.registered.add(name);
+				}
+			}
 		}
 		catch (BeansException e) {
 			throw e;
@@ -108,9 +297,50 @@ class AutoConfigurations extends AutoConfigurationImportSelector
 			ConfigurableListableBeanFactory factory) throws Exception {
 		AutoRegistrar registrar = new AutoRegistrar(registry, factory, getEnvironment(),
 				getResourceLoader());
-		for (Class<?> type : config()) {
-			registrar.register(type);
+		if (getEnvironment().getProperty(RegistrationSnapshot.ENABLED, Boolean.class,
+				false)) {
+			String fingerprint = RegistrationSnapshot.fingerprint(getBeanClassLoader(),
+					getEnvironment());
+			File file = RegistrationSnapshot.file(getEnvironment(), fingerprint);
+			RegistrationSnapshot snapshot = RegistrationSnapshot.read(file, fingerprint);
+			if (snapshot != null) {
+				// The candidates are still needed for training mode
+				this.candidates = snapshot.getCandidates();
+				registrar.replay(snapshot);
+				return;
+			}
+			snapshot = new RegistrationSnapshot(fingerprint);
+			registrar.record(snapshot);
+			register(registrar);
+			snapshot.setCandidates(this.candidates);
+			snapshot.write(file);
+			return;
+		}
+		register(registrar);
+	}
+
+	private void register(AutoRegistrar registrar) {
+		StartupListener listener = StartupListener.find(getBeanFactory());
+		long start = listener == null ? 0 : System.nanoTime();
+		String[] types = config();
+		this.candidates = types;
+		if (listener != null) {
+			listener.selected(types, start, System.nanoTime() - start);
+		}
+		registrar.index(index());
+		if (getEnvironment().getProperty(PARALLEL_ENABLED, Boolean.class, false)) {
+			int threads = getEnvironment().getProperty(PARALLEL_THREADS, Integer.class,
+					Runtime.getRuntime().availableProcessors());
+			for (String type : registrar.filter(types, threads)) {
+				registrar.register(type, true);
+			}
+		}
+		else {
+			for (String type : types) {
+				registrar.register(type, false);
+			}
 		}
+		registrar.registerDeferred();
 	}
 
-}
\ No newline at end of file
+}
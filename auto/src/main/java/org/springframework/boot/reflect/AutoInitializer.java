@@ -41,6 +41,35 @@ public class AutoInitializer
 
 	@Override
 	public void initialize(GenericApplicationContext context) {
+		listeners(context);
+		StartupListener listener = StartupListener
+				.find(context.getDefaultListableBeanFactory());
+		long start = listener == null ? 0 : System.nanoTime();
+		infrastructure(context);
+		context.addBeanFactoryPostProcessor(new AutoConfigurations(context));
+		if (listener != null) {
+			listener.initialized(getClass().getName(), start, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Install the startup listeners that are switched on in the environment of the
+	 * context.
+	 * @param context the application context
+	 */
+	static void listeners(GenericApplicationContext context) {
+		StartupProfiler.install(context);
+		FlightRecorderListener.install(context);
+		ChromeTraceListener.install(context);
+		CreationMetrics.install(context);
+	}
+
+	/**
+	 * Set up the bean factory and register the beans that the autoconfigurations rely on
+	 * (everything apart from the autoconfigurations themselves).
+	 * @param context the application context
+	 */
+	void infrastructure(GenericApplicationContext context) {
 		AutoConfigurationPackages.register(context, ClassUtils.getPackageName(this.type));
 		DefaultListableBeanFactory beanFactory = context.getDefaultListableBeanFactory();
 		if (beanFactory != null) {
@@ -60,7 +89,6 @@ public class AutoInitializer
 		context.registerBean(ConfigurationPropertiesBindingPostProcessor.class);
 		context.registerBean(ConfigurationBeanFactoryMetadata.BEAN_NAME,
 				ConfigurationBeanFactoryMetadata.class);
-		context.addBeanFactoryPostProcessor(new AutoConfigurations(context));
 	}
 
 }
@@ -19,12 +19,9 @@ import org.springframework.beans.BeanUtils;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.context.event.ApplicationStartingEvent;
-import org.springframework.boot.web.reactive.context.ReactiveWebServerApplicationContext;
-import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
 import org.springframework.context.ApplicationContextInitializer;
 import org.springframework.context.ApplicationEvent;
 import org.springframework.context.event.SmartApplicationListener;
-import org.springframework.context.support.GenericApplicationContext;
 import org.springframework.core.env.StandardEnvironment;
 
 /**
@@ -41,6 +38,9 @@ public class AutoListener implements SmartApplicationListener {
 
 	@Override
 	public void onApplicationEvent(ApplicationEvent event) {
+		boolean flightRecorder = FlightRecorderListener.isEnabled(environment);
+		boolean chromeTrace = ChromeTraceListener.isEnabled(environment);
+		long start = flightRecorder || chromeTrace ? System.nanoTime() : 0;
 		ApplicationStartingEvent starting = (ApplicationStartingEvent) event;
 		SpringApplication application = starting.getSpringApplication();
 		boolean initialized = false;
@@ -49,20 +49,28 @@ public class AutoListener implements SmartApplicationListener {
 			if (source instanceof Class<?>) {
 				type = (Class<?>) source;
 			}
+			if (BootstrapInitializer.isBootstrap(type)
+					&& BootstrapInitializer.isEnabled(environment)) {
+				// Spring Cloud bootstrap context: register the bootstrap configuration
+				application.setApplicationContextClass(IndexedBeanFactory.Generic.class);
+				application.addInitializers(new BootstrapInitializer());
+				initialized = true;
+				continue;
+			}
 			if (!initialized && isFunctional(type)) {
 				WebApplicationType webApplicationType = application
 						.getWebApplicationType();
 				if (webApplicationType == WebApplicationType.REACTIVE) {
 					application.setApplicationContextClass(
-							ReactiveWebServerApplicationContext.class);
+							IndexedBeanFactory.Reactive.class);
 				}
 				else if (webApplicationType == WebApplicationType.SERVLET) {
 					application.setApplicationContextClass(
-							ServletWebServerApplicationContext.class);
+							IndexedBeanFactory.Servlet.class);
 				}
 				else {
-					application
-							.setApplicationContextClass(GenericApplicationContext.class);
+					application.setApplicationContextClass(
+							IndexedBeanFactory.Generic.class);
 				}
 				application.addInitializers(new AutoInitializer(type));
 				initialized = true;
@@ -70,9 +78,24 @@ public class AutoListener implements SmartApplicationListener {
 			if (isInitializer(type)) {
 				application.addInitializers(BeanUtils.instantiateClass(type,
 						ApplicationContextInitializer.class));
-			} else {
-				application.addInitializers(new BeansInitializer(type));
 			}
+			else {
+				ApplicationContextInitializer<?> generated = BeansInitializer
+						.generated(type);
+				application.addInitializers(
+						generated != null ? generated : new BeansInitializer(type));
+			}
+		}
+		if (!flightRecorder && !chromeTrace) {
+			return;
+		}
+		long nanos = System.nanoTime() - start;
+		if (flightRecorder) {
+			FlightRecorderListener.starting(application.getAllSources().size(),
+					initialized, start, nanos);
+		}
+		if (chromeTrace) {
+			application.addInitializers(new ChromeTraceListener.Starting(start, nanos));
 		}
 	}
 
@@ -16,129 +16,263 @@
 
 package org.springframework.boot.reflect;
 
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
-import org.springframework.beans.factory.config.DependencyDescriptor;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.support.BeanDefinitionOverrideException;
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
 import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.boot.autoconfigure.condition.ConditionEvaluationReport;
+import org.springframework.boot.autoconfigure.condition.ConditionEvaluationReport.ConditionAndOutcome;
+import org.springframework.boot.autoconfigure.condition.ConditionEvaluationReport.ConditionAndOutcomes;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Condition;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.ConfigurationCondition.ConfigurationPhase;
 import org.springframework.context.annotation.Import;
 import org.springframework.context.annotation.ImportBeanDefinitionRegistrar;
-import org.springframework.core.MethodParameter;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.ResolvableType;
 import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.core.env.Environment;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.core.type.ClassMetadata;
 import org.springframework.core.type.MethodMetadata;
-import org.springframework.core.type.StandardAnnotationMetadata;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
 
 /**
+ * Registers bean definitions for a configuration class, its nested and imported
+ * configuration classes, and its {@link Bean @Bean} methods. Metadata is read from the
+ * bytecode (via a shared {@link MetadataReaderFactory}) so that conditions are evaluated
+ * before a class is loaded, and skipped classes are never loaded at all. Definitions are
+ * collected in a batch and registered together, just before something needs to see them
+ * in the registry (a condition that depends on the registry, or an
+ * {@link ImportBeanDefinitionRegistrar}).
+ *
  * @author Dave Syer
  *
  */
 public class AutoRegistrar {
 
+	/**
+	 * The bean name of the {@link MetadataReaderFactory} shared by all registrars for the
+	 * same bean factory.
+	 */
+	public static final String METADATA_READER_FACTORY_BEAN_NAME = "org.springframework.boot.reflect.metadataReaderFactory";
+
+	/**
+	 * The name of the bean definition attribute holding the name of the (top level)
+	 * class that the definition was registered for.
+	 */
+	static final String SOURCE_ATTRIBUTE = "org.springframework.boot.reflect.source";
+
 	private final ConditionEvaluator evaluator;
 	private final BeanDefinitionRegistry registry;
 	private final ConfigurableListableBeanFactory beanFactory;
+	private final MetadataReaderFactory metadataReaderFactory;
+	private final ClassPathIndex classPathIndex;
+	private final SharedCaches caches;
+	private final ClassLoader classLoader;
+	private final Environment environment;
+	private final ResourceLoader resourceLoader;
+	private final StartupListener listener;
+	private final TypeIndex types;
+	private final IndexedBeanFactory indexed;
+	private final AsyncSuppliers async;
+	private final Map<String, Pending> pending = new LinkedHashMap<>();
+	private RegistrationSnapshot snapshot;
+	private String source;
+	private AutoConfigurationIndex index;
+	private final List<Deferred> deferred = new ArrayList<>();
 
 	public AutoRegistrar(BeanDefinitionRegistry registry, ConfigurableListableBeanFactory beanFactory, Environment environment,
 			ResourceLoader resourceLoader) {
 		this.registry = registry;
 		this.beanFactory = beanFactory;
-		this.evaluator = new ConditionEvaluator(registry, environment, resourceLoader);
+		this.classLoader = resourceLoader.getClassLoader();
+		this.caches = SharedCaches.get(beanFactory, this.classLoader, environment);
+		this.metadataReaderFactory = metadataReaderFactory(beanFactory, this.caches);
+		this.classPathIndex = ClassPathIndex.get(beanFactory, this.classLoader,
+				environment);
+		this.types = TypeIndex.get(beanFactory);
+		this.indexed = indexed(registry);
+		this.async = AsyncSuppliers.get(beanFactory, environment);
+		this.evaluator = new ConditionEvaluator(registry, environment,
+				resourceLoader, this.classPathIndex, this.caches);
+		this.environment = environment;
+		this.resourceLoader = resourceLoader;
+		this.listener = StartupListener.find(beanFactory);
 	}
 
 	public void register(Class<?> type) {
+		register(type.getName());
+	}
+
+	public void register(String className) {
+		register(className, false);
+		registerDeferred();
+	}
+
+	/**
+	 * Register a class whose conditions may already have been partly evaluated. The
+	 * <code>@Bean</code> methods with conditions that depend on the bean registry are
+	 * deferred until {@link #registerDeferred()} is called, or until a class condition
+	 * that depends on the bean registry is evaluated, whichever comes first.
+	 * @param className the name of the class to register
+	 * @param filtered true if the conditions that do not depend on the bean registry
+	 * have already been evaluated (e.g. by {@link #filter(String[], int)})
+	 */
+	void register(String className, boolean filtered) {
+		long start = this.listener == null ? 0 : System.nanoTime();
+		AnnotationMetadata metadata = metadata(className);
+		if (!skip(evaluator, metadata, filtered ? ConditionEvaluator::isRegistryDependent
+				: condition -> true)) {
+			this.source = className;
+			register(registry, evaluator, metadata);
+		}
+		if (this.listener != null) {
+			this.listener.processed(className, start, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Evaluate the conditions on the classes provided that do not depend on the bean
+	 * registry, in parallel. Each worker thread uses its own throwaway bean factory in the
+	 * condition context, so that the condition evaluation report (which is not thread
+	 * safe) is only updated from the calling thread, once all the workers are done.
+	 * @param classNames the names of the classes
+	 * @param parallelism the number of threads to use
+	 * @return the names of the classes that were not skipped, in the original order
+	 */
+	String[] filter(String[] classNames, int parallelism) {
+		boolean[] skipped = new boolean[classNames.length];
+		Map<Thread, DefaultListableBeanFactory> factories = new ConcurrentHashMap<>();
+		Map<Thread, ConditionEvaluator> evaluators = new ConcurrentHashMap<>();
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
 		try {
-			StandardAnnotationMetadata metadata = new StandardAnnotationMetadata(
-					type);
-			if (evaluator.shouldSkip(metadata, ConfigurationPhase.REGISTER_BEAN)) {
-				return;
+			pool.submit(() -> IntStream.range(0, classNames.length).parallel()
+					.forEach(i -> {
+						ConditionEvaluator evaluator = evaluators.computeIfAbsent(
+								Thread.currentThread(), thread -> {
+									DefaultListableBeanFactory factory = new DefaultListableBeanFactory(
+											this.beanFactory);
+									factories.put(thread, factory);
+									return new ConditionEvaluator(factory,
+											this.environment, this.resourceLoader,
+											this.classPathIndex, this.caches);
+								});
+						skipped[i] = skip(evaluator, metadata(classNames[i]),
+								condition -> !ConditionEvaluator
+										.isRegistryDependent(condition));
+					})).get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted evaluating conditions", e);
+		}
+		catch (ExecutionException e) {
+			ReflectionUtils.rethrowRuntimeException(e.getCause());
+		}
+		finally {
+			pool.shutdown();
+		}
+		ConditionEvaluationReport report = ConditionEvaluationReport
+				.get(this.beanFactory);
+		for (DefaultListableBeanFactory factory : factories.values()) {
+			for (Map.Entry<String, ConditionAndOutcomes> entry : ConditionEvaluationReport
+					.get(factory).getConditionAndOutcomesBySource().entrySet()) {
+				for (ConditionAndOutcome outcome : entry.getValue()) {
+					report.recordConditionEvaluation(entry.getKey(),
+							outcome.getCondition(), outcome.getOutcome());
+				}
 			}
-			register(registry, evaluator, type, metadata);
 		}
-		catch (ArrayStoreException e) {
-			// ignore
+		List<String> result = new ArrayList<>();
+		for (int i = 0; i < classNames.length; i++) {
+			if (!skipped[i]) {
+				result.add(classNames[i]);
+			}
 		}
+		return StringUtils.toStringArray(result);
 	}
 
-
 	private void register(BeanDefinitionRegistry registry, ConditionEvaluator evaluator,
-			Class<?> type, StandardAnnotationMetadata metadata) {
-		for (Class<?> nested : type.getDeclaredClasses()) {
-			if (Modifier.isStatic(nested.getModifiers())) {
-				try {
-					if (!registry.containsBeanDefinition(nested.getName())) {
-						StandardAnnotationMetadata nestedMetadata = new StandardAnnotationMetadata(
-								nested);
-						if (nestedMetadata.hasAnnotation(Configuration.class.getName())
+			AnnotationMetadata metadata) {
+		for (String nested : metadata.getMemberClassNames()) {
+			if (!contains(nested) && matches(nested)) {
+				AnnotationMetadata nestedMetadata = metadata(nested);
+				if (nestedMetadata.isIndependent()
+						&& (nestedMetadata.hasAnnotation(Configuration.class.getName())
 								|| nestedMetadata
-										.hasAnnotatedMethods(Bean.class.getName())) {
-							if (!evaluator.shouldSkip(nestedMetadata,
-									ConfigurationPhase.REGISTER_BEAN)) {
-								register(registry, evaluator, nested, nestedMetadata);
-							}
-						}
+										.hasAnnotatedMethods(Bean.class.getName()))) {
+					if (!skip(evaluator, nestedMetadata, condition -> true)) {
+						register(registry, evaluator, nestedMetadata);
 					}
 				}
-				catch (ArrayStoreException e) {
-					// TODO: use ASM to avoid this?
-				}
 			}
 		}
 		if (metadata.hasAnnotation(Import.class.getName())) {
-			Object[] props = (Object[]) metadata
-					.getAnnotationAttributes(Import.class.getName()).get("value");
+			String[] props = (String[]) metadata
+					.getAnnotationAttributes(Import.class.getName(), true).get("value");
 			if (props != null && props.length > 0) {
-				for (Object object : props) {
-					Class<?> imported = (Class<?>) object;
-					if (ImportBeanDefinitionRegistrar.class.isAssignableFrom(imported)) {
-						ImportBeanDefinitionRegistrar registrar = (ImportBeanDefinitionRegistrar) this.beanFactory
-								.createBean(imported);
-						registrar.registerBeanDefinitions(metadata, registry);
+				for (String imported : props) {
+					if (!matches(imported)) {
+						// Required classes are missing, so don't even read the metadata
+						continue;
 					}
-					try {
-						StandardAnnotationMetadata nestedMetadata = new StandardAnnotationMetadata(
-								imported);
-						if (!registry.containsBeanDefinition(imported.getName())
-								&& !evaluator.shouldSkip(nestedMetadata,
-										ConfigurationPhase.REGISTER_BEAN)) {
-							register(registry, evaluator, imported, nestedMetadata);
-						}
+					AnnotationMetadata nestedMetadata = metadata(imported);
+					if (isAssignable(nestedMetadata,
+							ImportBeanDefinitionRegistrar.class.getName())) {
+						registerRegistrar(imported, metadata);
 					}
-					catch (ArrayStoreException e) {
-						// TODO: use ASM to avoid this?
+					if (!contains(imported)
+							&& !skip(evaluator, nestedMetadata, condition -> true)) {
+						register(registry, evaluator, nestedMetadata);
 					}
 				}
 			}
 		}
 		if (metadata.hasAnnotation(EnableConfigurationProperties.class.getName())) {
-			Object[] props = (Object[]) metadata.getAnnotationAttributes(
-					EnableConfigurationProperties.class.getName()).get("value");
+			String[] props = (String[]) metadata.getAnnotationAttributes(
+					EnableConfigurationProperties.class.getName(), true).get("value");
 			if (props != null && props.length > 0) {
-				for (Object object : props) {
-					Class<?> prop = (Class<?>) object;
-					String name = prop.getName();
-					if (!registry.containsBeanDefinition(name)) {
-						registry.registerBeanDefinition(name, BeanDefinitionBuilder
-								.genericBeanDefinition(prop).getRawBeanDefinition());
+				for (String name : props) {
+					if (!contains(name)) {
+						registerProperties(name);
 					}
 				}
 			}
 		}
-		registry.registerBeanDefinition(type.getName(),
-				BeanDefinitionBuilder.genericBeanDefinition(type).getRawBeanDefinition());
+		// Only now that all the conditions have passed do we need to load the class
+		Class<?> type = registerConfiguration(metadata.getClassName());
 		Set<MethodMetadata> methods = metadata.getAnnotatedMethods(Bean.class.getName());
 		Map<String, MethodMetadata> beans = new HashMap<>();
 		for (MethodMetadata method : methods) {
@@ -146,56 +280,439 @@ public class AutoRegistrar {
 		}
 		for (Method method : ReflectionUtils.getUniqueDeclaredMethods(type)) {
 			if (AnnotationUtils.findAnnotation(method, Bean.class) != null) {
-				register(registry, evaluator, type, method, beans.get(method.getName()));
+				MethodMetadata bean = beans.get(method.getName());
+				if (evaluator.hasCondition(bean,
+						ConditionEvaluator::isRegistryDependent)) {
+					// Wait until all the unconditional beans are registered
+					if (!skip(evaluator, bean, condition -> !ConditionEvaluator
+							.isRegistryDependent(condition))) {
+						this.deferred.add(
+								new Deferred(type, method, bean, this.source));
+					}
+				}
+				else if (!skip(evaluator, bean, condition -> true)) {
+					registerBean(type, method);
+				}
 			}
 		}
 	}
 
-	private void register(BeanDefinitionRegistry registry, ConditionEvaluator evaluator,
-			Class<?> type, Method method, MethodMetadata metadata) {
+	/**
+	 * Evaluate the conditions that depend on the bean registry (e.g.
+	 * <code>@ConditionalOnMissingBean</code>) for the <code>@Bean</code> methods that
+	 * were deferred, now that all the other bean definitions are registered, and register
+	 * the ones that match. They are evaluated in the order they were found, and each one
+	 * sees the beans registered before it. This also happens before any class condition
+	 * that depends on the bean registry is evaluated, so that (e.g.) a
+	 * <code>@ConditionalOnBean</code> on a configuration class sees a
+	 * <code>@ConditionalOnMissingBean</code> method in a configuration class processed
+	 * before it.
+	 */
+	void registerDeferred() {
+		List<Deferred> deferred = new ArrayList<>(this.deferred);
+		this.deferred.clear();
+		for (Deferred bean : deferred) {
+			if (!skip(this.evaluator, bean.metadata,
+					ConditionEvaluator::isRegistryDependent)) {
+				this.source = bean.source;
+				registerBean(bean.type, bean.method);
+			}
+		}
+		flush();
+	}
+
+	/**
+	 * Register all the pending bean definitions, in the order they were added. An indexed
+	 * bean factory adds each one to its type index with the type it is registered with,
+	 * so it is only indexed once.
+	 */
+	void flush() {
+		if (this.pending.isEmpty()) {
+			return;
+		}
+		for (Map.Entry<String, Pending> entry : this.pending.entrySet()) {
+			String name = entry.getKey();
+			Pending pending = entry.getValue();
+			if (this.indexed != null) {
+				this.indexed.registerBeanDefinition(name, pending.definition,
+						pending.type);
+			}
+			else {
+				this.registry.registerBeanDefinition(name, pending.definition);
+				if (pending.type != null) {
+					this.types.add(name, pending.type);
+				}
+				else {
+					this.types.add(name);
+				}
+			}
+		}
+		this.pending.clear();
+	}
+
+	private void add(String name, AbstractBeanDefinition definition,
+			@Nullable ResolvableType type) {
+		source(definition);
+		Pending existing = this.pending.get(name);
+		if (existing != null && !isAllowBeanDefinitionOverriding()) {
+			// Same as the registry would if the batch had already been flushed
+			throw new BeanDefinitionOverrideException(name, definition,
+					existing.definition);
+		}
+		// Otherwise a later definition replaces an earlier one in place, as in the
+		// registry
+		this.pending.put(name, new Pending(definition, type));
+	}
+
+	private boolean isAllowBeanDefinitionOverriding() {
+		return !(this.beanFactory instanceof DefaultListableBeanFactory)
+				|| ((DefaultListableBeanFactory) this.beanFactory)
+						.isAllowBeanDefinitionOverriding();
+	}
+
+	private boolean contains(String name) {
+		return this.pending.containsKey(name)
+				|| this.registry.containsBeanDefinition(name);
+	}
+
+	/**
+	 * Use an index to drop nested and imported classes whose required classes are
+	 * missing, before their metadata is read.
+	 * @param index the index (may be null)
+	 */
+	void index(AutoConfigurationIndex index) {
+		this.index = index;
+	}
+
+	private boolean matches(String className) {
+		return this.index == null || this.index.matches(className);
+	}
+
+	private boolean skip(ConditionEvaluator evaluator, AnnotatedTypeMetadata metadata,
+			Predicate<Condition> filter) {
+		if (evaluator == this.evaluator
+				&& (!this.pending.isEmpty() || !this.deferred.isEmpty())
+				&& evaluator.hasCondition(metadata,
+						condition -> filter.test(condition)
+								&& ConditionEvaluator.isRegistryDependent(condition))) {
+			if (metadata instanceof MethodMetadata) {
+				// The condition has to see everything registered so far
+				flush();
+			}
+			else {
+				// A class condition also has to see the @Bean methods deferred so far,
+				// as it would if the configuration classes were processed in order
+				registerDeferred();
+			}
+		}
+		if (this.listener == null || metadata == null) {
+			return evaluator.shouldSkip(metadata, ConfigurationPhase.REGISTER_BEAN,
+					filter);
+		}
+		long start = System.nanoTime();
+		Condition condition = evaluator.getSkippingCondition(metadata,
+				ConfigurationPhase.REGISTER_BEAN, filter);
+		this.listener.evaluated(element(metadata),
+				condition == null ? null : condition.getClass().getName(), start,
+				System.nanoTime() - start);
+		return condition != null;
+	}
+
+	private static String element(AnnotatedTypeMetadata metadata) {
+		if (metadata instanceof MethodMetadata) {
+			MethodMetadata method = (MethodMetadata) metadata;
+			return element(method.getDeclaringClassName(), method.getMethodName());
+		}
+		return ((ClassMetadata) metadata).getClassName();
+	}
+
+	private static String element(String className, String methodName) {
+		return className + "#" + methodName;
+	}
+
+	/**
+	 * Record all the registrations made from now on (after conditions have been
+	 * evaluated) in the snapshot provided.
+	 * @param snapshot the snapshot to record in
+	 */
+	void record(RegistrationSnapshot snapshot) {
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * Replay the registrations in a snapshot, without evaluating any conditions.
+	 * @param snapshot the snapshot to replay
+	 */
+	void replay(RegistrationSnapshot snapshot) {
+		Class<?> type = null;
+		for (RegistrationSnapshot.Entry entry : snapshot.getEntries()) {
+			// So the definitions are attributed to the same autoconfiguration as before
+			this.source = entry.getSource();
+			switch (entry.getKind()) {
+			case CONFIGURATION:
+				registerConfiguration(entry.getType());
+				break;
+			case PROPERTIES:
+				if (!contains(entry.getType())) {
+					registerProperties(entry.getType());
+				}
+				break;
+			case REGISTRAR:
+				registerRegistrar(entry.getName(), metadata(entry.getType()));
+				break;
+			case BEAN:
+				if (type == null || !type.getName().equals(entry.getType())) {
+					type = resolve(entry.getType());
+				}
+				registerBean(type, beanMethod(type, entry.getName()));
+				break;
+			}
+		}
+		flush();
+	}
+
+	private void registerRegistrar(String name, AnnotationMetadata metadata) {
+		ImportBeanDefinitionRegistrar registrar = (ImportBeanDefinitionRegistrar) this.beanFactory
+				.createBean(resolve(name));
+		// The registrar might look in the registry
+		flush();
+		Set<String> existing = this.source == null ? null
+				: new HashSet<>(Arrays.asList(registry.getBeanDefinitionNames()));
+		registrar.registerBeanDefinitions(metadata, registry);
+		if (existing != null) {
+			for (String registered : registry.getBeanDefinitionNames()) {
+				if (!existing.contains(registered)) {
+					registry.getBeanDefinition(registered)
+							.setAttribute(SOURCE_ATTRIBUTE, this.source);
+				}
+			}
+		}
+		if (this.snapshot != null) {
+			this.snapshot.add(RegistrationSnapshot.Kind.REGISTRAR,
+					metadata.getClassName(), name, this.source);
+		}
+	}
+
+	private void registerProperties(String name) {
+		AbstractBeanDefinition definition = BeanDefinitionBuilder
+				.genericBeanDefinition(resolve(name)).getRawBeanDefinition();
+		add(name, definition, null);
+		if (this.snapshot != null) {
+			this.snapshot.add(RegistrationSnapshot.Kind.PROPERTIES, name, null,
+					this.source);
+		}
+	}
+
+	private Class<?> registerConfiguration(String className) {
+		long start = this.listener == null ? 0 : System.nanoTime();
+		Class<?> type = resolve(className);
+		AbstractBeanDefinition definition = BeanDefinitionBuilder
+				.genericBeanDefinition(type).getRawBeanDefinition();
+		Constructor<?> constructor = constructor(type);
+		if (constructor != null) {
+			InjectionPlan plan = InjectionPlan.of(constructor, type.getName());
+			definition.setAttribute(InjectionPlan.ATTRIBUTE, plan);
+			definition.setInstanceSupplier(supplier(plan));
+		}
+		add(type.getName(), definition, ResolvableType.forClass(type));
+		if (this.snapshot != null) {
+			this.snapshot.add(RegistrationSnapshot.Kind.CONFIGURATION, className, null,
+					this.source);
+		}
+		if (this.listener != null) {
+			this.listener.registered(className, start, System.nanoTime() - start);
+		}
+		return type;
+	}
+
+	private void registerBean(Class<?> type, Method method) {
+		long start = this.listener == null ? 0 : System.nanoTime();
+		String element = element(type.getName(), method.getName());
+		ResolvableType beanType = ResolvableType.forMethodReturnType(method, type);
+		InjectionPlan plan = InjectionPlan.of(method, type, method.getName(),
+				type.getName());
+		RootBeanDefinition definition = new RootBeanDefinition();
+		// The full generic type, so that generic injection points (and FactoryBean
+		// object types) can be matched without creating the bean
+		definition.setTargetType(beanType);
+		definition.setAttribute(InjectionPlan.ATTRIBUTE, plan);
+		definition.setInstanceSupplier(supplier(plan));
+		definition.setFactoryMethodName(method.getName());
+		// Bean name for factory...
+		definition.setFactoryBeanName(type.getName());
+		add(method.getName(), definition, beanType);
+		if (this.snapshot != null) {
+			this.snapshot.add(RegistrationSnapshot.Kind.BEAN, type.getName(),
+					method.getName(), this.source);
+		}
+		if (this.listener != null) {
+			this.listener.registered(element, start, System.nanoTime() - start);
+		}
+	}
+
+	private void source(AbstractBeanDefinition definition) {
+		if (this.source != null) {
+			definition.setAttribute(SOURCE_ATTRIBUTE, this.source);
+		}
+	}
+
+	/**
+	 * Create an instance supplier for a plan in the bean factory of this registrar, in the
+	 * background if it is marked that way, and reporting to the startup listeners.
+	 * @param plan the plan for the bean
+	 * @return the instance supplier
+	 */
+	Supplier<?> supplier(InjectionPlan plan) {
+		Executable executable = plan.getExecutable();
+		if (executable instanceof Method
+				&& this.async.isAsync(plan.getBeanName(), (Method) executable)) {
+			return supplier(plan.getElement(), this.async.supplier(this.beanFactory,
+					plan, ((Method) executable).getReturnType()));
+		}
+		return supplier(plan.getElement(), plan.bind(this.beanFactory));
+	}
+
+	private Supplier<?> supplier(String element, Supplier<?> supplier) {
+		StartupListener listener = this.listener;
+		if (listener == null) {
+			return supplier;
+		}
+		return () -> {
+			long start = System.nanoTime();
+			try {
+				return supplier.get();
+			}
+			finally {
+				listener.supplied(element, start, System.nanoTime() - start);
+			}
+		};
+	}
+
+	/**
+	 * The constructor to use for a configuration class: the one marked
+	 * <code>@Autowired</code>, the only one, or the default one. If there is no obvious
+	 * choice returns null, and the bean factory decides.
+	 */
+	private Constructor<?> constructor(Class<?> type) {
+		Constructor<?>[] constructors = type.getDeclaredConstructors();
+		Constructor<?> result = null;
+		for (Constructor<?> constructor : constructors) {
+			if (AnnotationUtils.findAnnotation(constructor, Autowired.class) != null) {
+				if (result != null) {
+					return null;
+				}
+				result = constructor;
+			}
+		}
+		if (result != null) {
+			return result;
+		}
+		if (constructors.length == 1) {
+			return constructors[0];
+		}
+		for (Constructor<?> constructor : constructors) {
+			if (constructor.getParameterCount() == 0) {
+				return constructor;
+			}
+		}
+		return null;
+	}
+
+	private Method beanMethod(Class<?> type, String name) {
+		for (Method method : ReflectionUtils.getUniqueDeclaredMethods(type)) {
+			if (method.getName().equals(name)
+					&& AnnotationUtils.findAnnotation(method, Bean.class) != null) {
+				return method;
+			}
+		}
+		throw new IllegalStateException(
+				"No @Bean method named " + name + " in " + type.getName());
+	}
+
+	private AnnotationMetadata metadata(String className) {
 		try {
-			if (!evaluator.shouldSkip(metadata, ConfigurationPhase.REGISTER_BEAN)) {
-				Class<?> beanClass = method.getReturnType();
-				Supplier<?> supplier = () -> {
-					Object[] args = params(method, this.beanFactory);
-					ReflectionUtils.makeAccessible(method);
-					Object result = ReflectionUtils.invokeMethod(method,
-							getBean(method, type), args);
-					return result;
-				};
-				RootBeanDefinition definition = new RootBeanDefinition();
-				definition.setTargetType(beanClass);
-				definition.setInstanceSupplier(supplier);
-				definition.setFactoryMethodName(method.getName());
-				// Bean name for factory...
-				definition.setFactoryBeanName(type.getName());
-				registry.registerBeanDefinition(method.getName(), definition);
-			}
-		}
-		catch (ArrayStoreException e) {
-			// TODO: use ASM to avoid this?
-		}
-	}
-
-	private Object getBean(Method method, Class<?> type) {
-		if (Modifier.isStatic(method.getModifiers())) {
-			return null;
-		}
-		// We have to use getBeansOfType() to avoid eager instantiation of everything when
-		// this is a factory for a bean factory post processor
-		Map<String, ?> beans = this.beanFactory.getBeansOfType(type, false, false);
-		// TODO: deal with no unique bean
-		return beans.values().iterator().next();
-	}
-
-	private Object[] params(Method method, ConfigurableListableBeanFactory factory) {
-		Object[] params = new Object[method.getParameterCount()];
-		for (int i = 0; i < params.length; i++) {
-			// TODO: deal with required flag
-			params[i] = factory.resolveDependency(
-					new DependencyDescriptor(new MethodParameter(method, i), false),
-					method.getName());
-		}
-		return params;
+			return this.metadataReaderFactory.getMetadataReader(className)
+					.getAnnotationMetadata();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot read metadata for " + className, e);
+		}
+	}
+
+	private boolean isAssignable(ClassMetadata metadata, String interfaceName) {
+		for (String name : metadata.getInterfaceNames()) {
+			if (name.equals(interfaceName) || (!name.startsWith("java.")
+					&& isAssignable(metadata(name), interfaceName))) {
+				return true;
+			}
+		}
+		String superClassName = metadata.getSuperClassName();
+		return superClassName != null && !superClassName.startsWith("java.")
+				&& isAssignable(metadata(superClassName), interfaceName);
+	}
+
+	private Class<?> resolve(String className) {
+		return ClassUtils.resolveClassName(className, this.classLoader);
+	}
+
+	private static MetadataReaderFactory metadataReaderFactory(
+			ConfigurableListableBeanFactory beanFactory, SharedCaches caches) {
+		synchronized (beanFactory) {
+			if (!beanFactory.containsSingleton(METADATA_READER_FACTORY_BEAN_NAME)) {
+				beanFactory.registerSingleton(METADATA_READER_FACTORY_BEAN_NAME,
+						caches.getMetadataReaderFactory());
+			}
+			return (MetadataReaderFactory) beanFactory
+					.getSingleton(METADATA_READER_FACTORY_BEAN_NAME);
+		}
+	}
+
+	@Nullable
+	private static IndexedBeanFactory indexed(BeanDefinitionRegistry registry) {
+		if (registry instanceof IndexedBeanFactory) {
+			return (IndexedBeanFactory) registry;
+		}
+		if (registry instanceof GenericApplicationContext) {
+			DefaultListableBeanFactory beanFactory = ((GenericApplicationContext) registry)
+					.getDefaultListableBeanFactory();
+			if (beanFactory instanceof IndexedBeanFactory) {
+				return (IndexedBeanFactory) beanFactory;
+			}
+		}
+		return null;
 	}
+
+	private static class Pending {
+
+		private final AbstractBeanDefinition definition;
+
+		private final ResolvableType type;
+
+		Pending(AbstractBeanDefinition definition, @Nullable ResolvableType type) {
+			this.definition = definition;
+			this.type = type;
+		}
+
+	}
+
+	private static class Deferred {
+
+		private final Class<?> type;
+
+		private final Method method;
+
+		private final MethodMetadata metadata;
+
+		private final String source;
+
+		Deferred(Class<?> type, Method method, MethodMetadata metadata,
+				String source) {
+			this.type = type;
+			this.method = method;
+			this.metadata = metadata;
+			this.source = source;
+		}
+
+	}
+
 }
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflect;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Defers the creation of autoconfigured singletons until the application is ready, and
+ * then creates them on a background thread. Beans that have to exist before the
+ * application can serve requests (the web server, handler mappings, post processors,
+ * lifecycle beans, listeners etc.) are left alone, and so are the beans registered by
+ * the user's own initializers, and beans that do work when they are initialized (an
+ * init method, <code>@PostConstruct</code> or {@link InitializingBean}, e.g. a database
+ * migration). Only the declared type of a bean is known before it is created, so a bean
+ * created in the background that turns out to be a {@link SmartInitializingSingleton} or
+ * an auto-startup {@link SmartLifecycle} gets the callbacks it missed as soon as it is
+ * created.
+ *
+ * @author Dave Syer
+ *
+ */
+class BackgroundInitializer implements ApplicationListener<ApplicationReadyEvent> {
+
+	/**
+	 * Flag to switch on the deferred, background initialization of autoconfigured
+	 * singletons (default false).
+	 */
+	static final String ENABLED = "spring.functional.background.enabled";
+
+	/**
+	 * Comma-separated bean names or class names (including supertypes) of autoconfigured
+	 * beans to create eagerly on the main thread, in addition to the built in ones.
+	 */
+	static final String EAGER = "spring.functional.background.eager";
+
+	private static final Log logger = LogFactory.getLog(BackgroundInitializer.class);
+
+	private static final String POST_CONSTRUCT = "javax.annotation.PostConstruct";
+
+	/**
+	 * Types of beans that do their work without being injected anywhere (they are called
+	 * by the container or the web server).
+	 */
+	static final String[] EAGER_TYPES = {
+			"org.springframework.beans.factory.FactoryBean",
+			"org.springframework.beans.factory.InitializingBean",
+			"org.springframework.beans.factory.SmartInitializingSingleton",
+			"org.springframework.beans.factory.config.BeanPostProcessor",
+			"org.springframework.beans.factory.config.BeanFactoryPostProcessor",
+			"org.springframework.context.ApplicationListener",
+			"org.springframework.context.Lifecycle",
+			"org.springframework.boot.ApplicationRunner",
+			"org.springframework.boot.CommandLineRunner",
+			"org.springframework.boot.web.servlet.ServletContextInitializer",
+			"org.springframework.boot.web.servlet.server.ServletWebServerFactory",
+			"org.springframework.boot.web.reactive.server.ReactiveWebServerFactory",
+			"org.springframework.web.servlet.DispatcherServlet",
+			"org.springframework.web.servlet.HandlerMapping",
+			"org.springframework.web.servlet.HandlerAdapter",
+			"org.springframework.web.reactive.HandlerMapping",
+			"org.springframework.web.reactive.HandlerAdapter",
+			"org.springframework.web.server.WebHandler",
+			"org.springframework.http.server.reactive.HttpHandler" };
+
+	private final GenericApplicationContext context;
+
+	private final Set<String> eager = new LinkedHashSet<>();
+
+	private final List<Class<?>> eagerTypes = new ArrayList<>();
+
+	private final List<String> deferred = new ArrayList<>();
+
+	BackgroundInitializer(GenericApplicationContext context) {
+		this.context = context;
+		Set<String> names = new LinkedHashSet<>(Arrays.asList(EAGER_TYPES));
+		names.addAll(StringUtils.commaDelimitedListToSet(
+				context.getEnvironment().getProperty(EAGER, "")));
+		ClassLoader classLoader = context.getClassLoader();
+		for (String name : names) {
+			name = name.trim();
+			this.eager.add(name);
+			if (ClassUtils.isPresent(name, classLoader)) {
+				this.eagerTypes.add(ClassUtils.resolveClassName(name, classLoader));
+			}
+		}
+	}
+
+	static boolean isEnabled(Environment environment) {
+		return environment.getProperty(ENABLED, Boolean.class, false);
+	}
+
+	/**
+	 * Mark the beans provided as lazy (unless they have to be created eagerly), and
+	 * create them in the background when the application is ready.
+	 * @param beanFactory the bean factory
+	 * @param names the names of the autoconfigured beans
+	 */
+	void defer(ConfigurableListableBeanFactory beanFactory, Collection<String> names) {
+		for (String name : names) {
+			if (!beanFactory.containsBeanDefinition(name)) {
+				continue;
+			}
+			BeanDefinition definition = beanFactory.getBeanDefinition(name);
+			if (!definition.isSingleton() || definition.isLazyInit()
+					|| definition.isAbstract() || isEager(name, definition)) {
+				continue;
+			}
+			definition.setLazyInit(true);
+			this.deferred.add(name);
+		}
+		if (!this.deferred.isEmpty()) {
+			// Merged definitions may already have been cached with the old flag
+			beanFactory.clearMetadataCache();
+			this.context.addApplicationListener(this);
+		}
+	}
+
+	@Override
+	public void onApplicationEvent(ApplicationReadyEvent event) {
+		if (event.getApplicationContext() != this.context) {
+			return;
+		}
+		Thread thread = new Thread(this::initialize, "spring-functional-background");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void initialize() {
+		ConfigurableListableBeanFactory beanFactory = this.context.getBeanFactory();
+		long start = System.nanoTime();
+		int count = 0;
+		for (String name : this.deferred) {
+			if (!this.context.isActive()) {
+				return;
+			}
+			if (beanFactory.containsSingleton(name)) {
+				continue;
+			}
+			try {
+				created(name, beanFactory.getBean(name));
+				count++;
+			}
+			catch (RuntimeException e) {
+				if (!this.context.isActive()) {
+					return;
+				}
+				logger.warn("Cannot initialize bean " + name + " in the background", e);
+			}
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Initialized " + count + " beans in the background in "
+					+ (System.nanoTime() - start) / 1000000 + "ms");
+		}
+	}
+
+	/**
+	 * Give a bean that was created in the background the callbacks it would have had if
+	 * it was created eagerly, if its actual type needs them.
+	 */
+	private void created(String name, Object bean) {
+		if (bean instanceof SmartInitializingSingleton) {
+			logger.debug("Bean " + name + " was created late: initializing");
+			((SmartInitializingSingleton) bean).afterSingletonsInstantiated();
+		}
+		if (bean instanceof SmartLifecycle && ((SmartLifecycle) bean).isAutoStartup()
+				&& this.context.isRunning() && !((SmartLifecycle) bean).isRunning()) {
+			logger.debug("Bean " + name + " was created late: starting");
+			((SmartLifecycle) bean).start();
+		}
+	}
+
+	private boolean isEager(String name, BeanDefinition definition) {
+		if (this.eager.contains(name)) {
+			return true;
+		}
+		if (definition instanceof AbstractBeanDefinition
+				&& ((AbstractBeanDefinition) definition).getInitMethodName() != null) {
+			return true;
+		}
+		Class<?> type = type(definition);
+		if (type == null) {
+			// Unknown type, so we can't tell if it is safe to defer
+			return true;
+		}
+		for (Class<?> eager : this.eagerTypes) {
+			if (eager.isAssignableFrom(type)) {
+				return true;
+			}
+		}
+		return hasPostConstruct(type);
+	}
+
+	private boolean hasPostConstruct(Class<?> type) {
+		if (!ClassUtils.isPresent(POST_CONSTRUCT, this.context.getClassLoader())) {
+			return false;
+		}
+		for (Method method : ReflectionUtils.getUniqueDeclaredMethods(type)) {
+			for (Annotation annotation : method.getAnnotations()) {
+				if (annotation.annotationType().getName().equals(POST_CONSTRUCT)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private Class<?> type(BeanDefinition definition) {
+		if (definition instanceof RootBeanDefinition
+				&& ((RootBeanDefinition) definition).getTargetType() != null) {
+			return ((RootBeanDefinition) definition).getTargetType();
+		}
+		if (definition.getFactoryMethodName() != null) {
+			return null;
+		}
+		String className = definition.getBeanClassName();
+		ClassLoader classLoader = this.context.getClassLoader();
+		if (className == null || !ClassUtils.isPresent(className, classLoader)) {
+			return null;
+		}
+		return ClassUtils.resolveClassName(className, classLoader);
+	}
+
+}
@@ -16,8 +16,10 @@
 
 package org.springframework.boot.reflect;
 
+import org.springframework.beans.BeanUtils;
 import org.springframework.context.ApplicationContextInitializer;
 import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.util.ClassUtils;
 
 /**
  * @author Dave Syer
@@ -34,8 +36,48 @@ public class BeansInitializer
 
 	@Override
 	public void initialize(GenericApplicationContext context) {
+		ApplicationContextInitializer<GenericApplicationContext> generated = generated(
+				this.type);
+		if (generated != null) {
+			generated.initialize(context);
+			return;
+		}
+		StartupListener listener = StartupListener
+				.find(context.getDefaultListableBeanFactory());
+		long start = listener == null ? 0 : System.nanoTime();
 		new AutoRegistrar(context, context.getDefaultListableBeanFactory(),
 				context.getEnvironment(), context).register(type);
+		if (listener != null) {
+			listener.initialized(getClass().getName() + "(" + type.getName() + ")",
+					start, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Look for an initializer generated at build time for the type (by the
+	 * {@code spring-boot-auto-reflect-processor}). Its name is the name of the type, with
+	 * {@code $} replaced by {@code _}, plus {@code Initializer}.
+	 * @param type the configuration class
+	 * @return an instance of the generated initializer or null if there is none
+	 */
+	@SuppressWarnings("unchecked")
+	static ApplicationContextInitializer<GenericApplicationContext> generated(
+			Class<?> type) {
+		String packageName = ClassUtils.getPackageName(type);
+		String simpleName = packageName.isEmpty() ? type.getName()
+				: type.getName().substring(packageName.length() + 1);
+		String name = (packageName.isEmpty() ? "" : packageName + ".")
+				+ simpleName.replace('$', '_') + "Initializer";
+		ClassLoader classLoader = type.getClassLoader();
+		if (!ClassUtils.isPresent(name, classLoader)) {
+			return null;
+		}
+		Class<?> initializer = ClassUtils.resolveClassName(name, classLoader);
+		if (!ApplicationContextInitializer.class.isAssignableFrom(initializer)) {
+			return null;
+		}
+		return BeanUtils.instantiateClass(initializer,
+				ApplicationContextInitializer.class);
 	}
 
 }
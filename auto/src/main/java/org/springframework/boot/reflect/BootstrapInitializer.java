@@ -0,0 +1,187 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflect;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.boot.context.properties.ConfigurationBeanFactoryMetadata;
+import org.springframework.boot.context.properties.ConfigurationPropertiesBindingPostProcessor;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.annotation.AnnotationConfigUtils;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.support.SpringFactoriesLoader;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Initializer for the Spring Cloud bootstrap context, registering the
+ * <code>BootstrapConfiguration</code> classes with an {@link AutoRegistrar} (in the same
+ * order as the <code>BootstrapImportSelector</code> would import them), instead of
+ * processing them as annotated configuration classes.
+ *
+ * @author Dave Syer
+ *
+ */
+class BootstrapInitializer
+		implements ApplicationContextInitializer<GenericApplicationContext> {
+
+	/**
+	 * Flag to switch off the functional registration of the Spring Cloud bootstrap
+	 * configuration (default true).
+	 */
+	static final String ENABLED = "spring.functional.bootstrap.enabled";
+
+	private static final String SOURCE = "org.springframework.cloud.bootstrap.BootstrapImportSelectorConfiguration";
+
+	private static final String FACTORY = "org.springframework.cloud.bootstrap.BootstrapConfiguration";
+
+	private static final String SOURCES = "spring.cloud.bootstrap.sources";
+
+	/**
+	 * Check if a source of an application is the one that Spring Cloud uses for the
+	 * bootstrap context.
+	 * @param type the source
+	 * @return true if it is the bootstrap source
+	 */
+	static boolean isBootstrap(Class<?> type) {
+		return type != null && SOURCE.equals(type.getName());
+	}
+
+	static boolean isEnabled(Environment environment) {
+		return environment.getProperty(ENABLED, Boolean.class, true);
+	}
+
+	@Override
+	public void initialize(GenericApplicationContext context) {
+		StartupListener listener = StartupListener
+				.find(context.getDefaultListableBeanFactory());
+		long start = listener == null ? 0 : System.nanoTime();
+		// The annotation processors are registered when the source is loaded, but the
+		// @EnableConfigurationProperties support is not
+		if (!context.containsBeanDefinition(
+				ConfigurationPropertiesBindingPostProcessor.BEAN_NAME)) {
+			context.registerBean(ConfigurationPropertiesBindingPostProcessor.BEAN_NAME,
+					ConfigurationPropertiesBindingPostProcessor.class);
+			context.registerBean(ConfigurationBeanFactoryMetadata.BEAN_NAME,
+					ConfigurationBeanFactoryMetadata.class);
+		}
+		context.addBeanFactoryPostProcessor(new BootstrapConfigurations(context));
+		if (listener != null) {
+			listener.initialized(getClass().getName(), start, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * The bootstrap configuration class names, sorted by their <code>@Order</code>. Only
+	 * the explicit sources are used if Spring Cloud is not on the classpath.
+	 * @param classLoader the class loader
+	 * @param environment the environment
+	 * @param metadataReaderFactory a metadata reader factory
+	 * @return the class names
+	 */
+	static String[] candidates(ClassLoader classLoader, Environment environment,
+			MetadataReaderFactory metadataReaderFactory) {
+		Set<String> names = new LinkedHashSet<>();
+		if (ClassUtils.isPresent(FACTORY, classLoader)) {
+			names.addAll(SpringFactoriesLoader.loadFactoryNames(
+					ClassUtils.resolveClassName(FACTORY, classLoader), classLoader));
+		}
+		for (String name : StringUtils.commaDelimitedListToStringArray(
+				environment.getProperty(SOURCES, ""))) {
+			if (StringUtils.hasText(name)) {
+				names.add(name.trim());
+			}
+		}
+		List<String> result = new ArrayList<>(names);
+		result.sort(Comparator.comparingInt(name -> order(metadataReaderFactory, name)));
+		return StringUtils.toStringArray(result);
+	}
+
+	private static int order(MetadataReaderFactory metadataReaderFactory, String name) {
+		try {
+			Map<String, Object> attributes = metadataReaderFactory
+					.getMetadataReader(name).getAnnotationMetadata()
+					.getAnnotationAttributes(Order.class.getName());
+			if (attributes != null && attributes.get("value") != null) {
+				return (Integer) attributes.get("value");
+			}
+			return Ordered.LOWEST_PRECEDENCE;
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot read metadata for " + name, e);
+		}
+	}
+
+	private static class BootstrapConfigurations
+			implements BeanDefinitionRegistryPostProcessor {
+
+		private final GenericApplicationContext context;
+
+		BootstrapConfigurations(GenericApplicationContext context) {
+			this.context = context;
+		}
+
+		@Override
+		public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry)
+				throws BeansException {
+			// Nothing is left for the configuration class post processor to do
+			if (registry.containsBeanDefinition(
+					AnnotationConfigUtils.CONFIGURATION_ANNOTATION_PROCESSOR_BEAN_NAME)) {
+				registry.removeBeanDefinition(
+						AnnotationConfigUtils.CONFIGURATION_ANNOTATION_PROCESSOR_BEAN_NAME);
+			}
+			ConfigurableListableBeanFactory beanFactory = this.context
+					.getDefaultListableBeanFactory();
+			Environment environment = this.context.getEnvironment();
+			ClassLoader classLoader = this.context.getClassLoader();
+			StartupListener listener = StartupListener.find(beanFactory);
+			long start = listener == null ? 0 : System.nanoTime();
+			String[] candidates = candidates(classLoader, environment, SharedCaches
+					.get(beanFactory, classLoader, environment).getMetadataReaderFactory());
+			if (listener != null) {
+				listener.selected(candidates, start, System.nanoTime() - start);
+			}
+			AutoRegistrar registrar = new AutoRegistrar(registry, beanFactory,
+					environment, this.context);
+			for (String candidate : candidates) {
+				registrar.register(candidate, false);
+			}
+			registrar.registerDeferred();
+		}
+
+		@Override
+		public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory)
+				throws BeansException {
+		}
+
+	}
+
+}
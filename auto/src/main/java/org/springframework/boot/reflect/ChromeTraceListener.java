@@ -0,0 +1,307 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflect;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.ApplicationContextEvent;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.SmartApplicationListener;
+import org.springframework.context.support.AbstractApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.lang.Nullable;
+import org.springframework.util.StringUtils;
+
+/**
+ * A {@link StartupListener} that records a span for each call, with the thread it ran on,
+ * and writes them in the Chrome trace event format when the application is ready (or
+ * when the context is closed if it never was), so the whole startup can be viewed as a
+ * flame chart in <code>chrome://tracing</code> or Perfetto. Nothing is recorded after the
+ * file is written. Each context has its own listener and its own file, named with the
+ * context id (e.g. the Spring Cloud bootstrap context and the main context).
+ *
+ * @author Dave Syer
+ *
+ */
+class ChromeTraceListener implements StartupListener, SmartApplicationListener {
+
+	/**
+	 * Flag to switch on the startup trace (default false).
+	 */
+	static final String ENABLED = "spring.functional.trace.enabled";
+
+	/**
+	 * The file to write the trace to, with the context id added before the extension
+	 * (default is <code>spring-functional-trace.json</code> in the temp directory, so
+	 * e.g. <code>spring-functional-trace-application.json</code>).
+	 */
+	static final String FILE = "spring.functional.trace.file";
+
+	private static final Log logger = LogFactory.getLog(ChromeTraceListener.class);
+
+	private final Queue<Span> spans = new ConcurrentLinkedQueue<>();
+
+	private final Map<Long, String> threads = new ConcurrentHashMap<>();
+
+	private final File file;
+
+	private final ApplicationContext context;
+
+	private volatile boolean written;
+
+	ChromeTraceListener(File file, ApplicationContext context) {
+		this.file = file;
+		this.context = context;
+	}
+
+	static boolean isEnabled(Environment environment) {
+		return environment.getProperty(ENABLED, Boolean.class, false);
+	}
+
+	/**
+	 * Install a listener in the context if it is switched on in the environment.
+	 * @param context the application context
+	 */
+	static void install(GenericApplicationContext context) {
+		Environment environment = context.getEnvironment();
+		if (!isEnabled(environment)) {
+			return;
+		}
+		String file = environment.getProperty(FILE);
+		ChromeTraceListener listener = new ChromeTraceListener(StringUtils.hasText(file)
+				? new File(file)
+				: new File(System.getProperty("java.io.tmpdir"),
+						"spring-functional-trace.json"),
+				context);
+		StartupListener.register(context.getDefaultListableBeanFactory(), listener);
+		context.addApplicationListener(listener);
+	}
+
+	/**
+	 * Record the work done on the sources of an application before its context was
+	 * created.
+	 * @param start the start time
+	 * @param nanos the time taken
+	 */
+	void starting(long start, long nanos) {
+		add(new Span(AutoListener.class.getName(), "listener", start, nanos, null));
+	}
+
+	/**
+	 * The file to write the trace of a context to.
+	 * @param id the context id
+	 * @return the file
+	 */
+	File file(String id) {
+		String name = this.file.getName();
+		String suffix = "-" + id.replaceAll("[^A-Za-z0-9._-]", "_");
+		int dot = name.lastIndexOf('.');
+		name = dot > 0 ? name.substring(0, dot) + suffix + name.substring(dot)
+				: name + suffix;
+		return new File(this.file.getParentFile(), name);
+	}
+
+	@Override
+	public void selected(String[] candidates, long start, long nanos) {
+		add(new Span(AutoConfigurations.class.getName() + ".config()", "selection",
+				start, nanos, Collections.<String, Object>singletonMap("candidates",
+						candidates.length)));
+	}
+
+	@Override
+	public void initialized(String initializer, long start, long nanos) {
+		add(new Span(initializer, "initializer", start, nanos, null));
+	}
+
+	@Override
+	public void evaluated(String element, @Nullable String skippedBy, long start,
+			long nanos) {
+		add(new Span(element, "condition", start, nanos, skippedBy == null ? null
+				: Collections.<String, Object>singletonMap("skippedBy", skippedBy)));
+	}
+
+	@Override
+	public void registered(String element, long start, long nanos) {
+		add(new Span(element, "registration", start, nanos, null));
+	}
+
+	@Override
+	public void processed(String className, long start, long nanos) {
+		add(new Span(className, "registrar", start, nanos, null));
+	}
+
+	@Override
+	public void supplied(String element, long start, long nanos) {
+		add(new Span(element, "supplier", start, nanos, null));
+	}
+
+	private void add(Span span) {
+		if (this.written) {
+			return;
+		}
+		this.spans.add(span);
+		this.threads.putIfAbsent(span.thread, Thread.currentThread().getName());
+	}
+
+	@Override
+	public boolean supportsEventType(Class<? extends ApplicationEvent> eventType) {
+		return ApplicationReadyEvent.class.isAssignableFrom(eventType)
+				|| ContextClosedEvent.class.isAssignableFrom(eventType);
+	}
+
+	@Override
+	public void onApplicationEvent(ApplicationEvent event) {
+		ApplicationContext context = event instanceof ApplicationReadyEvent
+				? ((ApplicationReadyEvent) event).getApplicationContext()
+				: ((ApplicationContextEvent) event).getApplicationContext();
+		if (context != this.context || this.written) {
+			// Events from a child context are published to the parent as well
+			return;
+		}
+		this.written = true;
+		File file = file(this.context.getId());
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+				StandardCharsets.UTF_8)) {
+			writer.write(StartupProfiler.json(trace()));
+		}
+		catch (IOException e) {
+			logger.warn("Cannot write startup trace to " + file, e);
+		}
+	}
+
+	/**
+	 * The trace in the Chrome trace event format, with times in microseconds from the
+	 * start of the first span.
+	 * @return the trace
+	 */
+	Map<String, Object> trace() {
+		List<Span> spans = new ArrayList<>(this.spans);
+		long origin = Long.MAX_VALUE;
+		for (Span span : spans) {
+			origin = Math.min(origin, span.start);
+		}
+		List<Map<String, Object>> events = new ArrayList<>();
+		for (Map.Entry<Long, String> thread : this.threads.entrySet()) {
+			Map<String, Object> event = new LinkedHashMap<>();
+			event.put("name", "thread_name");
+			event.put("ph", "M");
+			event.put("pid", 1);
+			event.put("tid", thread.getKey());
+			event.put("args", Collections.singletonMap("name", thread.getValue()));
+			events.add(event);
+		}
+		for (Span span : spans) {
+			Map<String, Object> event = new LinkedHashMap<>();
+			event.put("name", span.name);
+			event.put("cat", span.category);
+			event.put("ph", "X");
+			event.put("ts", (span.start - origin) / 1000);
+			event.put("dur", span.nanos / 1000);
+			event.put("pid", 1);
+			event.put("tid", span.thread);
+			if (span.args != null) {
+				event.put("args", span.args);
+			}
+			events.add(event);
+		}
+		Map<String, Object> trace = new LinkedHashMap<>();
+		trace.put("traceEvents", events);
+		trace.put("displayTimeUnit", "ms");
+		return trace;
+	}
+
+	/**
+	 * Adds the work done on the sources of an application before its context was created
+	 * to the trace of the context. It runs after the initializers that install the
+	 * listener, because it is added to the application after them.
+	 */
+	static class Starting
+			implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+		private final long start;
+
+		private final long nanos;
+
+		Starting(long start, long nanos) {
+			this.start = start;
+			this.nanos = nanos;
+		}
+
+		@Override
+		public void initialize(ConfigurableApplicationContext context) {
+			if (!(context instanceof AbstractApplicationContext)) {
+				return;
+			}
+			for (ApplicationListener<?> listener : ((AbstractApplicationContext) context)
+					.getApplicationListeners()) {
+				if (listener instanceof ChromeTraceListener) {
+					((ChromeTraceListener) listener).starting(this.start, this.nanos);
+				}
+			}
+		}
+
+	}
+
+	private static class Span {
+
+		private final String name;
+
+		private final String category;
+
+		private final long start;
+
+		private final long nanos;
+
+		private final long thread = Thread.currentThread().getId();
+
+		private final Map<String, Object> args;
+
+		Span(String name, String category, long start, long nanos,
+				@Nullable Map<String, Object> args) {
+			this.name = name;
+			this.category = category;
+			this.start = start;
+			this.nanos = nanos;
+			this.args = args;
+		}
+
+	}
+
+}
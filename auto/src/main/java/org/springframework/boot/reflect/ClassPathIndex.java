@@ -0,0 +1,528 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflect;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ResourceUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * An in-memory index of the names of all the classes on the classpath, so that checking
+ * if a class is present does not need a class loader lookup (which has to search every
+ * jar, and is slowest when the class is missing). The index is a bloom filter in front of
+ * a sorted table of names. It is read from a file generated at build time if that was
+ * generated for the same classpath (the file starts with a fingerprint of each entry on
+ * the classpath it was generated from, and it is only trusted if that covers every entry
+ * on the current classpath), or else built by reading the central directory of each jar
+ * (with memory mapped I/O) and walking each directory on the classpath. Directories can
+ * change after the index is built, so a class that is not in the index is also looked for
+ * in each directory. If the classpath cannot be read that way (e.g. it has nested jars),
+ * a generated file is used if there is one, but only to say that a class is present:
+ * anything else is passed on to the class loader. Classes in the JDK are not indexed,
+ * and checks for them are passed on to the class loader.
+ *
+ * @author Dave Syer
+ *
+ */
+final class ClassPathIndex {
+
+	/**
+	 * Flag to switch off the classpath index (default true).
+	 */
+	static final String ENABLED = "spring.functional.classpath.enabled";
+
+	/**
+	 * The location of the class names generated at build time, one per line.
+	 */
+	static final String LOCATION = "META-INF/spring-functional.classes";
+
+	/**
+	 * The prefix for lines in the generated file with a fingerprint of an entry on the
+	 * classpath it was generated from.
+	 */
+	static final String FINGERPRINT = "#";
+
+	/**
+	 * The name of the singleton holding the index in the bean factory.
+	 */
+	static final String BEAN_NAME = "org.springframework.boot.reflect.classPathIndex";
+
+	private static final Log logger = LogFactory.getLog(ClassPathIndex.class);
+
+	private static final String[] PLATFORM_PREFIXES = { "java.", "javax.", "jdk.",
+			"sun.", "com.sun.", "org.w3c.", "org.xml.", "org.ietf.", "org.omg." };
+
+	private static final int HASHES = 4;
+
+	private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+
+	private static final int CENTRAL_DIRECTORY_ENTRY = 0x02014b50;
+
+	@Nullable
+	private final String[] names;
+
+	private final long[] bloom;
+
+	private final ClassLoader classLoader;
+
+	/**
+	 * The directories on the classpath, or null if the names might not cover the whole
+	 * classpath (so a missing class has to be checked with the class loader).
+	 */
+	@Nullable
+	private final List<File> directories;
+
+	private ClassPathIndex(@Nullable String[] names, ClassLoader classLoader,
+			@Nullable List<File> directories) {
+		this.names = names;
+		this.classLoader = classLoader;
+		this.directories = directories;
+		this.bloom = new long[names == null ? 0 : Math.max(1, names.length * 10 / 64)];
+		if (names != null) {
+			Arrays.sort(names);
+			for (String name : names) {
+				int hash = name.hashCode();
+				int step = spread(hash);
+				for (int i = 0; i < HASHES; i++) {
+					int bit = bit(hash + i * step);
+					this.bloom[bit >>> 6] |= 1L << bit;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The index shared by everything that uses the bean factory provided (created the
+	 * first time it is needed).
+	 * @param beanFactory the bean factory
+	 * @param classLoader the class loader to index
+	 * @param environment the environment
+	 * @return the index or null if it is switched off or the classpath cannot be indexed
+	 */
+	@Nullable
+	static ClassPathIndex get(ConfigurableListableBeanFactory beanFactory,
+			ClassLoader classLoader, Environment environment) {
+		if (!environment.getProperty(ENABLED, Boolean.class, true)) {
+			return null;
+		}
+		ClassPathIndex index;
+		synchronized (beanFactory) {
+			if (!beanFactory.containsSingleton(BEAN_NAME)) {
+				beanFactory.registerSingleton(BEAN_NAME,
+						SharedCaches.get(beanFactory, classLoader, environment)
+								.getClassPathIndex());
+			}
+			index = (ClassPathIndex) beanFactory.getSingleton(BEAN_NAME);
+		}
+		return index.names != null ? index : null;
+	}
+
+	static ClassPathIndex load(ClassLoader classLoader) {
+		List<File> entries = entries(classLoader);
+		Set<String> fingerprints = entries == null ? null : fingerprints(entries);
+		List<File> directories = entries == null ? null : directories(entries);
+		List<String> partial = null;
+		try {
+			// A dependency might have its own copy, generated for a different classpath
+			for (URL url : Collections.list(classLoader.getResources(LOCATION))) {
+				List<String> names = new ArrayList<>();
+				Set<String> generated = new HashSet<>();
+				read(url, names, generated);
+				if (fingerprints != null && generated.containsAll(fingerprints)) {
+					return new ClassPathIndex(StringUtils.toStringArray(names),
+							classLoader, directories);
+				}
+				if (partial == null) {
+					partial = names;
+				}
+			}
+		}
+		catch (IOException e) {
+			logger.warn("Cannot read classpath index from " + LOCATION, e);
+		}
+		Set<String> names = entries == null ? null : scan(entries);
+		if (names != null) {
+			return new ClassPathIndex(StringUtils.toStringArray(names), classLoader,
+					directories);
+		}
+		return new ClassPathIndex(
+				partial == null ? null : StringUtils.toStringArray(partial), classLoader,
+				null);
+	}
+
+	private static void read(URL url, List<String> names, Set<String> fingerprints)
+			throws IOException {
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith(FINGERPRINT)) {
+					fingerprints.add(line.substring(FINGERPRINT.length()).trim());
+				}
+				else if (!line.isEmpty()) {
+					names.add(line);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write the names of the classes in a class loader to a file that can be loaded
+	 * instead of scanning the classpath at runtime.
+	 * @param classLoader the class loader
+	 * @param outputDirectory the root of the classpath to write to
+	 * @return the file or null if the classpath cannot be indexed
+	 * @throws IOException if the file cannot be written
+	 */
+	static File generate(ClassLoader classLoader, File outputDirectory)
+			throws IOException {
+		List<File> entries = entries(classLoader);
+		Set<String> names = entries == null ? null : scan(entries);
+		if (names == null) {
+			return null;
+		}
+		File file = new File(outputDirectory, LOCATION);
+		file.getParentFile().mkdirs();
+		try (OutputStream stream = Files.newOutputStream(file.toPath());
+				Writer writer = new OutputStreamWriter(stream, StandardCharsets.UTF_8)) {
+			for (String fingerprint : fingerprints(entries)) {
+				writer.write(FINGERPRINT + " " + fingerprint);
+				writer.write("\n");
+			}
+			for (String name : names) {
+				writer.write(name);
+				writer.write("\n");
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * Check if a class is present.
+	 * @param className the name of the class
+	 * @return true if the class is in the index, or in a directory on the classpath, or
+	 * it is a class that the class loader can find and the index cannot tell (e.g. in the
+	 * JDK)
+	 */
+	boolean isPresent(String className) {
+		if (mightContain(className)
+				&& Arrays.binarySearch(this.names, className) >= 0) {
+			return true;
+		}
+		if (this.directories == null) {
+			return ClassUtils.isPresent(className, this.classLoader);
+		}
+		for (String prefix : PLATFORM_PREFIXES) {
+			if (className.startsWith(prefix)) {
+				return ClassUtils.isPresent(className, this.classLoader);
+			}
+		}
+		String path = ClassUtils.convertClassNameToResourcePath(className)
+				+ ClassUtils.CLASS_FILE_SUFFIX;
+		for (File directory : this.directories) {
+			if (new File(directory, path).isFile()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * A class loader that fails fast for classes that are not in the index, and
+	 * otherwise delegates to the class loader that was indexed.
+	 * @return a class loader
+	 */
+	ClassLoader getClassLoader() {
+		return new IndexedClassLoader(this);
+	}
+
+	private boolean mightContain(String className) {
+		int hash = className.hashCode();
+		int step = spread(hash);
+		for (int i = 0; i < HASHES; i++) {
+			int bit = bit(hash + i * step);
+			if ((this.bloom[bit >>> 6] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int bit(int hash) {
+		return (hash & Integer.MAX_VALUE) % (this.bloom.length * 64);
+	}
+
+	private static int spread(int hash) {
+		hash ^= (hash >>> 16);
+		hash *= 0x85ebca6b;
+		hash ^= (hash >>> 13);
+		return hash | 1;
+	}
+
+	/**
+	 * The files and directories on the classpath of a class loader.
+	 * @param classLoader the class loader
+	 * @return the entries or null if they cannot all be read
+	 */
+	@Nullable
+	private static List<File> entries(ClassLoader classLoader) {
+		List<File> entries = new ArrayList<>();
+		ClassLoader system = ClassLoader.getSystemClassLoader();
+		ClassLoader loader = classLoader;
+		while (loader != null) {
+			if (loader instanceof URLClassLoader) {
+				for (URL url : ((URLClassLoader) loader).getURLs()) {
+					if (!ResourceUtils.isFileURL(url)) {
+						return null;
+					}
+					entries.add(file(url));
+				}
+			}
+			else if (loader == system) {
+				for (String path : StringUtils.delimitedListToStringArray(
+						System.getProperty("java.class.path", ""),
+						File.pathSeparator)) {
+					if (StringUtils.hasText(path)) {
+						entries.add(new File(path));
+					}
+				}
+			}
+			else if (loader != system.getParent()) {
+				// Unknown class loader, so we cannot tell what it might load
+				return null;
+			}
+			loader = loader.getParent();
+		}
+		return entries;
+	}
+
+	/**
+	 * A fingerprint for each entry on the classpath that exists: the name and size of
+	 * each jar, and the name of each directory. The full paths are not used because they
+	 * can be different at build time and at runtime.
+	 */
+	private static Set<String> fingerprints(List<File> entries) {
+		Set<String> fingerprints = new LinkedHashSet<>();
+		for (File entry : entries) {
+			if (entry.isDirectory()) {
+				fingerprints.add(entry.getName() + "/");
+			}
+			else if (entry.exists()) {
+				fingerprints.add(entry.getName() + ":" + entry.length());
+			}
+		}
+		return fingerprints;
+	}
+
+	private static List<File> directories(List<File> entries) {
+		List<File> directories = new ArrayList<>();
+		for (File entry : entries) {
+			if (entry.isDirectory()) {
+				directories.add(entry);
+			}
+		}
+		return directories;
+	}
+
+	@Nullable
+	private static Set<String> scan(List<File> entries) {
+		Set<String> names = new TreeSet<>();
+		for (File entry : entries) {
+			if (!index(entry, names)) {
+				return null;
+			}
+		}
+		return names;
+	}
+
+	private static File file(URL url) {
+		try {
+			return ResourceUtils.getFile(url);
+		}
+		catch (IOException e) {
+			return new File(url.getPath());
+		}
+	}
+
+	private static boolean index(File file, Set<String> names) {
+		if (!file.exists()) {
+			return true;
+		}
+		if (file.isDirectory()) {
+			return directory(file.toPath(), names);
+		}
+		return jar(file.toPath(), names);
+	}
+
+	private static boolean directory(Path root, Set<String> names) {
+		try (Stream<Path> paths = Files.walk(root)) {
+			paths.forEach(path -> {
+				if (Files.isRegularFile(path)) {
+					add(root.relativize(path).toString().replace(File.separatorChar, '/'),
+							names);
+				}
+			});
+			return true;
+		}
+		catch (IOException | RuntimeException e) {
+			return false;
+		}
+	}
+
+	private static boolean jar(Path file, Set<String> names) {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < 22) {
+				return false;
+			}
+			// The end of central directory record is at most 64k from the end
+			int length = (int) Math.min(size, 22 + 0xFFFF);
+			MappedByteBuffer end = channel.map(MapMode.READ_ONLY, size - length, length);
+			end.order(ByteOrder.LITTLE_ENDIAN);
+			int record = -1;
+			for (int i = length - 22; i >= 0; i--) {
+				if (end.getInt(i) == END_OF_CENTRAL_DIRECTORY) {
+					record = i;
+					break;
+				}
+			}
+			if (record < 0) {
+				return false;
+			}
+			int entries = end.getShort(record + 10) & 0xFFFF;
+			long directorySize = end.getInt(record + 12) & 0xFFFFFFFFL;
+			if (entries == 0xFFFF || directorySize == 0xFFFFFFFFL) {
+				// Zip64
+				return false;
+			}
+			// Measure from the end, in case there is a launch script at the start
+			long offset = size - length + record - directorySize;
+			if (offset < 0) {
+				return false;
+			}
+			MappedByteBuffer directory = channel.map(MapMode.READ_ONLY, offset,
+					directorySize);
+			directory.order(ByteOrder.LITTLE_ENDIAN);
+			byte[] buffer = new byte[256];
+			int position = 0;
+			for (int i = 0; i < entries; i++) {
+				if (position + 46 > directorySize
+						|| directory.getInt(position) != CENTRAL_DIRECTORY_ENTRY) {
+					return false;
+				}
+				int nameLength = directory.getShort(position + 28) & 0xFFFF;
+				int extraLength = directory.getShort(position + 30) & 0xFFFF;
+				int commentLength = directory.getShort(position + 32) & 0xFFFF;
+				if (buffer.length < nameLength) {
+					buffer = new byte[nameLength];
+				}
+				directory.position(position + 46);
+				directory.get(buffer, 0, nameLength);
+				if (nameLength > 6 && buffer[nameLength - 6] == '.'
+						&& buffer[nameLength - 1] == 's') {
+					add(new String(buffer, 0, nameLength, StandardCharsets.UTF_8),
+							names);
+				}
+				position += 46 + nameLength + extraLength + commentLength;
+			}
+			return true;
+		}
+		catch (IOException | RuntimeException e) {
+			return false;
+		}
+	}
+
+	private static void add(String path, Set<String> names) {
+		if (!path.endsWith(".class")) {
+			return;
+		}
+		if (path.startsWith("META-INF/versions/")) {
+			int index = path.indexOf('/', "META-INF/versions/".length());
+			if (index < 0) {
+				return;
+			}
+			path = path.substring(index + 1);
+		}
+		String name = path.substring(0, path.length() - ".class".length()).replace('/',
+				'.');
+		if (!name.endsWith("module-info") && !name.endsWith("package-info")) {
+			names.add(name);
+		}
+	}
+
+	/**
+	 * Class loader that throws {@link ClassNotFoundException} straight away for classes
+	 * that are not in the index.
+	 */
+	private static class IndexedClassLoader extends ClassLoader {
+
+		static {
+			ClassLoader.registerAsParallelCapable();
+		}
+
+		private final ClassPathIndex index;
+
+		IndexedClassLoader(ClassPathIndex index) {
+			super(index.classLoader);
+			this.index = index;
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve)
+				throws ClassNotFoundException {
+			if (!this.index.isPresent(name)) {
+				throw new ClassNotFoundException(name);
+			}
+			return super.loadClass(name, resolve);
+		}
+
+	}
+
+}
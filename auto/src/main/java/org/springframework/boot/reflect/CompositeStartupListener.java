@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflect;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A {@link StartupListener} that passes each call on to a list of others.
+ *
+ * @author Dave Syer
+ *
+ */
+class CompositeStartupListener implements StartupListener {
+
+	private final List<StartupListener> listeners = new CopyOnWriteArrayList<>();
+
+	void add(StartupListener listener) {
+		this.listeners.add(listener);
+	}
+
+	@Override
+	public void selected(String[] candidates, long start, long nanos) {
+		for (StartupListener listener : this.listeners) {
+			listener.selected(candidates, start, nanos);
+		}
+	}
+
+	@Override
+	public void initialized(String initializer, long start, long nanos) {
+		for (StartupListener listener : this.listeners) {
+			listener.initialized(initializer, start, nanos);
+		}
+	}
+
+	@Override
+	public void evaluated(String element, String skippedBy, long start, long nanos) {
+		for (StartupListener listener : this.listeners) {
+			listener.evaluated(element, skippedBy, start, nanos);
+		}
+	}
+
+	@Override
+	public void registered(String element, long start, long nanos) {
+		for (StartupListener listener : this.listeners) {
+			listener.registered(element, start, nanos);
+		}
+	}
+
+	@Override
+	public void processed(String className, long start, long nanos) {
+		for (StartupListener listener : this.listeners) {
+			listener.processed(className, start, nanos);
+		}
+	}
+
+	@Override
+	public void supplied(String element, long start, long nanos) {
+		for (StartupListener listener : this.listeners) {
+			listener.supplied(element, start, nanos);
+		}
+	}
+
+}
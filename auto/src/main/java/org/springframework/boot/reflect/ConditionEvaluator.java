@@ -16,13 +16,23 @@
 
 package org.springframework.boot.reflect;
 
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionEvaluationReport;
+import org.springframework.boot.autoconfigure.condition.ConditionOutcome;
+import org.springframework.boot.autoconfigure.condition.SpringBootCondition;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Condition;
 import org.springframework.context.annotation.ConditionContext;
@@ -38,6 +48,9 @@ import org.springframework.core.io.DefaultResourceLoader;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.core.type.AnnotatedTypeMetadata;
 import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.core.type.ClassMetadata;
+import org.springframework.core.type.MethodMetadata;
+import org.springframework.core.type.StandardMethodMetadata;
 import org.springframework.lang.Nullable;
 import org.springframework.util.Assert;
 import org.springframework.util.ClassUtils;
@@ -52,15 +65,47 @@ import org.springframework.util.MultiValueMap;
  */
 class ConditionEvaluator {
 
+	/**
+	 * Conditions whose outcome only depends on the annotated element and the classpath,
+	 * so it can be cached.
+	 */
+	private static final Set<String> CONTEXT_INDEPENDENT = new HashSet<>(Arrays.asList(
+			"org.springframework.boot.autoconfigure.condition.OnClassCondition",
+			"org.springframework.boot.autoconfigure.condition.OnJavaCondition"));
+
 	private final ConditionContextImpl context;
 
+	private final Map<String, Condition> instances;
+
+	private final Map<String, List<Condition>> chains;
+
+	private final Map<String, ConditionOutcome> outcomes;
+
 	/**
 	 * Create a new {@link ConditionEvaluator} instance.
 	 */
 	public ConditionEvaluator(@Nullable BeanDefinitionRegistry registry,
 			@Nullable Environment environment, @Nullable ResourceLoader resourceLoader) {
 
-		this.context = new ConditionContextImpl(registry, environment, resourceLoader);
+		this(registry, environment, resourceLoader, null, null);
+	}
+
+	/**
+	 * Create a new {@link ConditionEvaluator} instance that uses a {@link ClassPathIndex}
+	 * to check for the presence of classes, and keeps the conditions and the outcomes that
+	 * only depend on the classpath in the {@link SharedCaches} provided.
+	 */
+	ConditionEvaluator(@Nullable BeanDefinitionRegistry registry,
+			@Nullable Environment environment, @Nullable ResourceLoader resourceLoader,
+			@Nullable ClassPathIndex index, @Nullable SharedCaches caches) {
+
+		this.context = new ConditionContextImpl(registry, environment, resourceLoader,
+				index);
+		this.instances = caches != null ? caches.getConditions()
+				: new ConcurrentHashMap<>();
+		this.chains = caches != null ? caches.getChains() : new ConcurrentHashMap<>();
+		this.outcomes = caches != null ? caches.getOutcomes()
+				: new ConcurrentHashMap<>();
 	}
 
 	/**
@@ -83,48 +128,212 @@ class ConditionEvaluator {
 	 */
 	public boolean shouldSkip(@Nullable AnnotatedTypeMetadata metadata,
 			@Nullable ConfigurationPhase phase) {
+		return shouldSkip(metadata, phase, condition -> true);
+	}
+
+	/**
+	 * Determine if an item should be skipped based on {@code @Conditional} annotations,
+	 * only taking into account the conditions that match a filter.
+	 * @param metadata the meta data
+	 * @param phase the phase of the call
+	 * @param filter a filter for the conditions to evaluate
+	 * @return if the item should be skipped
+	 */
+	public boolean shouldSkip(@Nullable AnnotatedTypeMetadata metadata,
+			@Nullable ConfigurationPhase phase, Predicate<Condition> filter) {
+		return getSkippingCondition(metadata, phase, filter) != null;
+	}
+
+	/**
+	 * Find the condition that causes an item to be skipped, only taking into account the
+	 * conditions that match a filter.
+	 * @param metadata the meta data
+	 * @param phase the phase of the call
+	 * @param filter a filter for the conditions to evaluate
+	 * @return the first condition that does not match, or null if the item should not be
+	 * skipped
+	 */
+	@Nullable
+	public Condition getSkippingCondition(@Nullable AnnotatedTypeMetadata metadata,
+			@Nullable ConfigurationPhase phase, Predicate<Condition> filter) {
 		if (metadata == null || !metadata.isAnnotated(Conditional.class.getName())) {
-			return false;
+			return null;
 		}
 
 		if (phase == null) {
 			if (metadata instanceof AnnotationMetadata && ConditionEvaluator
 					.isConfigurationCandidate((AnnotationMetadata) metadata)) {
-				return shouldSkip(metadata, ConfigurationPhase.PARSE_CONFIGURATION);
-			}
-			return shouldSkip(metadata, ConfigurationPhase.REGISTER_BEAN);
-		}
-
-		List<Condition> conditions = new ArrayList<>();
-		for (String[] conditionClasses : getConditionClasses(metadata)) {
-			for (String conditionClass : conditionClasses) {
-				Condition condition = getCondition(conditionClass,
-						this.context.getClassLoader());
-				conditions.add(condition);
+				return getSkippingCondition(metadata,
+						ConfigurationPhase.PARSE_CONFIGURATION, filter);
 			}
+			return getSkippingCondition(metadata, ConfigurationPhase.REGISTER_BEAN,
+					filter);
 		}
 
-		AnnotationAwareOrderComparator.sort(conditions);
-
-		for (Condition condition : conditions) {
+		for (Condition condition : getConditions(metadata)) {
 			ConfigurationPhase requiredPhase = null;
 			if (condition instanceof ConfigurationCondition) {
 				requiredPhase = ((ConfigurationCondition) condition)
 						.getConfigurationPhase();
 			}
 			if ((requiredPhase == null || requiredPhase == phase)
-					&& !condition.matches(this.context, metadata)) {
-				return true;
+					&& filter.test(condition)
+					&& !matches(condition, metadata)) {
+				return condition;
 			}
 		}
 
+		return null;
+	}
+
+	/**
+	 * Determine if an item has any conditions that match a filter.
+	 * @param metadata the meta data
+	 * @param filter a filter for the conditions
+	 * @return true if at least one of the conditions on the item matches the filter
+	 */
+	public boolean hasCondition(@Nullable AnnotatedTypeMetadata metadata,
+			Predicate<Condition> filter) {
+		if (metadata == null || !metadata.isAnnotated(Conditional.class.getName())) {
+			return false;
+		}
+		for (Condition condition : getConditions(metadata)) {
+			if (filter.test(condition)) {
+				return true;
+			}
+		}
 		return false;
 	}
 
+	/**
+	 * Determine if a condition depends on the state of the bean registry (like
+	 * <code>@ConditionalOnBean</code>), in which case it has to be evaluated in the
+	 * order that the beans are registered.
+	 * @param condition the condition
+	 * @return true if the condition depends on the bean registry
+	 */
+	public static boolean isRegistryDependent(Condition condition) {
+		return condition instanceof ConfigurationCondition
+				&& ((ConfigurationCondition) condition)
+						.getConfigurationPhase() == ConfigurationPhase.REGISTER_BEAN;
+	}
+
 	public static boolean isConfigurationCandidate(AnnotationMetadata metadata) {
 		return metadata.isAnnotated(Configuration.class.getName());
 	}
 
+	private List<Condition> getConditions(AnnotatedTypeMetadata metadata) {
+		String key = key(metadata);
+		if (key == null) {
+			return computeConditions(metadata);
+		}
+		List<Condition> conditions = this.chains.get(key);
+		if (conditions == null) {
+			conditions = computeConditions(metadata);
+			this.chains.put(key, conditions);
+		}
+		return conditions;
+	}
+
+	private List<Condition> computeConditions(AnnotatedTypeMetadata metadata) {
+		List<Condition> conditions = new ArrayList<>();
+		for (String[] conditionClasses : getConditionClasses(metadata)) {
+			for (String conditionClass : conditionClasses) {
+				Condition condition = getCondition(conditionClass,
+						this.context.getClassLoader());
+				conditions.add(condition);
+			}
+		}
+		AnnotationAwareOrderComparator.sort(conditions);
+		return Collections.unmodifiableList(conditions);
+	}
+
+	private boolean matches(Condition condition, AnnotatedTypeMetadata metadata) {
+		String name = condition.getClass().getName();
+		String key = key(metadata);
+		if (key == null || !CONTEXT_INDEPENDENT.contains(name)
+				|| !(condition instanceof SpringBootCondition)) {
+			return condition.matches(this.context, metadata);
+		}
+		String source = source(metadata);
+		key = key + "@" + name;
+		ConditionOutcome outcome = this.outcomes.get(key);
+		if (outcome == null) {
+			outcome = getMatchOutcome((SpringBootCondition) condition, metadata, source);
+			this.outcomes.put(key, outcome);
+		}
+		// The outcome may have been computed for another context, but it still
+		// belongs in the report for this one
+		ConfigurableListableBeanFactory beanFactory = this.context.getBeanFactory();
+		if (beanFactory != null) {
+			ConditionEvaluationReport.get(beanFactory).recordConditionEvaluation(source,
+					condition, outcome);
+		}
+		return outcome.isMatch();
+	}
+
+	/**
+	 * Get the outcome of a condition, reporting failures with the name of the annotated
+	 * element in the same way as {@link SpringBootCondition#matches}.
+	 */
+	private ConditionOutcome getMatchOutcome(SpringBootCondition condition,
+			AnnotatedTypeMetadata metadata, String source) {
+		try {
+			return condition.getMatchOutcome(this.context, metadata);
+		}
+		catch (NoClassDefFoundError ex) {
+			throw new IllegalStateException("Could not evaluate condition on " + source
+					+ " due to " + ex.getMessage() + " not found. Make sure your own "
+					+ "configuration does not rely on that class. This can also happen "
+					+ "if you are @ComponentScanning a springframework package (e.g. "
+					+ "if you put a @ComponentScan in the default package by mistake)",
+					ex);
+		}
+		catch (RuntimeException ex) {
+			throw new IllegalStateException("Error processing condition on " + source,
+					ex);
+		}
+	}
+
+	/**
+	 * The name of the annotated element in the same form as the condition evaluation
+	 * report uses.
+	 */
+	private static String source(AnnotatedTypeMetadata metadata) {
+		if (metadata instanceof MethodMetadata) {
+			MethodMetadata method = (MethodMetadata) metadata;
+			return method.getDeclaringClassName() + "#" + method.getMethodName();
+		}
+		return ((ClassMetadata) metadata).getClassName();
+	}
+
+	/**
+	 * A key for the annotated element, used to cache the conditions that apply to it. A
+	 * method is identified by its parameter types as well as its name, so overloaded
+	 * methods with different conditions are kept apart. Method metadata read from a class
+	 * file does not have the parameter types, so the conditions on those methods are not
+	 * cached.
+	 * @param metadata the metadata of a class or a method
+	 * @return a key or null if the element cannot be identified
+	 */
+	@Nullable
+	private static String key(AnnotatedTypeMetadata metadata) {
+		if (metadata instanceof ClassMetadata) {
+			return ((ClassMetadata) metadata).getClassName();
+		}
+		if (metadata instanceof StandardMethodMetadata) {
+			Method method = ((StandardMethodMetadata) metadata).getIntrospectedMethod();
+			StringBuilder key = new StringBuilder(method.getDeclaringClass().getName())
+					.append("#").append(method.getName()).append("(");
+			Class<?>[] types = method.getParameterTypes();
+			for (int i = 0; i < types.length; i++) {
+				key.append(i > 0 ? "," : "").append(types[i].getName());
+			}
+			return key.append("):").append(method.getReturnType().getName()).toString();
+		}
+		return null;
+	}
+
 	@SuppressWarnings("unchecked")
 	private List<String[]> getConditionClasses(AnnotatedTypeMetadata metadata) {
 		MultiValueMap<String, Object> attributes = metadata
@@ -135,9 +344,14 @@ class ConditionEvaluator {
 
 	private Condition getCondition(String conditionClassName,
 			@Nullable ClassLoader classloader) {
-		Class<?> conditionClass = ClassUtils.resolveClassName(conditionClassName,
-				classloader);
-		return (Condition) BeanUtils.instantiateClass(conditionClass);
+		Condition condition = this.instances.get(conditionClassName);
+		if (condition == null) {
+			Class<?> conditionClass = ClassUtils.resolveClassName(conditionClassName,
+					classloader);
+			condition = (Condition) BeanUtils.instantiateClass(conditionClass);
+			this.instances.put(conditionClassName, condition);
+		}
+		return condition;
 	}
 
 	/**
@@ -158,9 +372,13 @@ class ConditionEvaluator {
 		@Nullable
 		private final ClassLoader classLoader;
 
+		@Nullable
+		private final ClassPathIndex index;
+
 		public ConditionContextImpl(@Nullable BeanDefinitionRegistry registry,
 				@Nullable Environment environment,
-				@Nullable ResourceLoader resourceLoader) {
+				@Nullable ResourceLoader resourceLoader,
+				@Nullable ClassPathIndex index) {
 
 			this.registry = registry;
 			this.beanFactory = deduceBeanFactory(registry);
@@ -168,7 +386,11 @@ class ConditionEvaluator {
 					: deduceEnvironment(registry));
 			this.resourceLoader = (resourceLoader != null ? resourceLoader
 					: deduceResourceLoader(registry));
-			this.classLoader = deduceClassLoader(resourceLoader, this.beanFactory);
+			this.index = index;
+			// Class presence checks go through the class loader, so the index has to
+			// sit in front of it
+			this.classLoader = index != null ? index.getClassLoader()
+					: deduceClassLoader(resourceLoader, this.beanFactory);
 		}
 
 		@Nullable
@@ -241,6 +463,11 @@ class ConditionEvaluator {
 		public ClassLoader getClassLoader() {
 			return this.classLoader;
 		}
+
+		@Nullable
+		public ClassPathIndex getClassPathIndex() {
+			return this.index;
+		}
 	}
 
 }
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflect;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+/**
+ * The autoconfigured bean definitions for an application, computed once, so that many
+ * similar contexts (e.g. one per tenant) can be created without evaluating the
+ * autoconfigurations again. Each context gets the definitions that the application's own
+ * initializers register (they are applied again, which is cheap), plus a copy of the
+ * autoconfigured definitions with their instance suppliers created again for the new
+ * bean factory, in the same way as the originals (including background creation and the
+ * startup listeners that are switched on). Autoconfigured definitions with an instance
+ * supplier that cannot be created again (e.g. from a bean definition registrar) are
+ * rejected when the template is created. Conditions are evaluated once, with the
+ * environment of the template, so properties that are overridden for a context can
+ * change the values that are bound, but not which beans are registered.
+ *
+ * <pre class="code">
+ * ContextTemplate template = ContextTemplate.of(TenantApplication.class);
+ * GenericApplicationContext context = template.create(properties);
+ * context.refresh();
+ * </pre>
+ *
+ * @author Dave Syer
+ *
+ */
+public final class ContextTemplate {
+
+	private final Class<?> source;
+
+	private final ConfigurableEnvironment environment;
+
+	private final Map<String, BeanDefinition> definitions;
+
+	private ContextTemplate(Class<?> source, ConfigurableEnvironment environment,
+			Map<String, BeanDefinition> definitions) {
+		this.source = source;
+		this.environment = environment;
+		this.definitions = Collections.unmodifiableMap(definitions);
+	}
+
+	/**
+	 * Create a template for an application.
+	 * @param source the application source (an initializer or a configuration class)
+	 * @return a template
+	 */
+	public static ContextTemplate of(Class<?> source) {
+		return of(source, new StandardEnvironment());
+	}
+
+	/**
+	 * Create a template for an application, evaluating the autoconfigurations with the
+	 * environment provided.
+	 * @param source the application source (an initializer or a configuration class)
+	 * @param environment the environment
+	 * @return a template
+	 */
+	public static ContextTemplate of(Class<?> source,
+			ConfigurableEnvironment environment) {
+		GenericApplicationContext context = new IndexedBeanFactory.Generic();
+		context.setEnvironment(environment);
+		new AutoInitializer(source).initialize(context);
+		initializer(source).initialize(context);
+		DefaultListableBeanFactory beanFactory = context.getDefaultListableBeanFactory();
+		Set<String> existing = new HashSet<>();
+		Collections.addAll(existing, beanFactory.getBeanDefinitionNames());
+		for (BeanFactoryPostProcessor processor : context
+				.getBeanFactoryPostProcessors()) {
+			if (processor instanceof BeanDefinitionRegistryPostProcessor) {
+				((BeanDefinitionRegistryPostProcessor) processor)
+						.postProcessBeanDefinitionRegistry(beanFactory);
+			}
+		}
+		Map<String, BeanDefinition> definitions = new LinkedHashMap<>();
+		for (String name : beanFactory.getBeanDefinitionNames()) {
+			if (existing.contains(name)) {
+				continue;
+			}
+			BeanDefinition definition = beanFactory.getMergedBeanDefinition(name);
+			if (definition instanceof AbstractBeanDefinition
+					&& ((AbstractBeanDefinition) definition).getInstanceSupplier() != null
+					&& !(definition
+							.getAttribute(InjectionPlan.ATTRIBUTE) instanceof InjectionPlan)) {
+				// The supplier might refer to the bean factory of the template
+				throw new IllegalStateException("Cannot create a template for " + source
+						+ ": the instance supplier of bean " + name
+						+ " cannot be created again for another context");
+			}
+			definitions.put(name, definition.cloneBeanDefinition());
+		}
+		return new ContextTemplate(source, environment, definitions);
+	}
+
+	/**
+	 * Create a new context from the template. It is not yet refreshed.
+	 * @return a new context
+	 */
+	public GenericApplicationContext create() {
+		return create(Collections.emptyMap());
+	}
+
+	/**
+	 * Create a new context from the template, with some properties that override the
+	 * ones in the environment of the template. It is not yet refreshed.
+	 * @param properties the properties to override
+	 * @return a new context
+	 */
+	public GenericApplicationContext create(Map<String, Object> properties) {
+		GenericApplicationContext context = new IndexedBeanFactory.Generic();
+		ConfigurableEnvironment environment = new StandardEnvironment();
+		environment.merge(this.environment);
+		if (!properties.isEmpty()) {
+			environment.getPropertySources().addFirst(
+					new MapPropertySource("contextTemplate", properties));
+		}
+		context.setEnvironment(environment);
+		AutoInitializer.listeners(context);
+		new AutoInitializer(this.source).infrastructure(context);
+		initializer(this.source).initialize(context);
+		DefaultListableBeanFactory beanFactory = context.getDefaultListableBeanFactory();
+		AutoRegistrar registrar = new AutoRegistrar(beanFactory, beanFactory,
+				environment, context);
+		for (Map.Entry<String, BeanDefinition> entry : this.definitions.entrySet()) {
+			if (beanFactory.containsBeanDefinition(entry.getKey())) {
+				continue;
+			}
+			AbstractBeanDefinition definition = ((AbstractBeanDefinition) entry
+					.getValue()).cloneBeanDefinition();
+			InjectionPlan plan = (InjectionPlan) definition
+					.getAttribute(InjectionPlan.ATTRIBUTE);
+			if (plan != null) {
+				definition.setInstanceSupplier(registrar.supplier(plan));
+			}
+			beanFactory.registerBeanDefinition(entry.getKey(), definition);
+		}
+		return context;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ApplicationContextInitializer<GenericApplicationContext> initializer(
+			Class<?> source) {
+		if (ApplicationContextInitializer.class.isAssignableFrom(source)) {
+			return BeanUtils.instantiateClass(source,
+					ApplicationContextInitializer.class);
+		}
+		ApplicationContextInitializer<GenericApplicationContext> generated = BeansInitializer
+				.generated(source);
+		return generated != null ? generated : new BeansInitializer(source);
+	}
+
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflect;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.util.ClassUtils;
+
+/**
+ * A {@link StartupListener} that records how long the instance supplier of each bean
+ * takes, per bean and per configuration class, in histograms. The suppliers are called
+ * every time a bean is created, so prototype and request scoped beans are measured at
+ * runtime as well as singletons at startup. If Micrometer is on the classpath the
+ * histograms are also published as meters.
+ *
+ * @author Dave Syer
+ *
+ */
+class CreationMetrics implements StartupListener {
+
+	/**
+	 * Flag to switch on the bean creation metrics (default false).
+	 */
+	static final String ENABLED = "spring.functional.metrics.enabled";
+
+	private static final String METER_BINDER_CLASS = "io.micrometer.core.instrument.binder.MeterBinder";
+
+	private final Map<String, Histogram> beans = new ConcurrentHashMap<>();
+
+	private final Map<String, Histogram> configurations = new ConcurrentHashMap<>();
+
+	private final CopyOnWriteArrayList<Consumer<Histogram>> callbacks = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Install the metrics in the context if they are switched on in the environment.
+	 * @param context the application context
+	 */
+	static void install(GenericApplicationContext context) {
+		Environment environment = context.getEnvironment();
+		if (!environment.getProperty(ENABLED, Boolean.class, false)) {
+			return;
+		}
+		CreationMetrics metrics = new CreationMetrics();
+		StartupListener.register(context.getDefaultListableBeanFactory(), metrics);
+		if (ClassUtils.isPresent(METER_BINDER_CLASS, context.getClassLoader())) {
+			context.registerBean(CreationMetricsBinder.class,
+					() -> new CreationMetricsBinder(metrics));
+		}
+	}
+
+	@Override
+	public void supplied(String element, long start, long nanos) {
+		int index = element.indexOf('#');
+		String configuration = index < 0 ? element : element.substring(0, index);
+		String bean = index < 0 ? element : element.substring(index + 1);
+		histogram(this.beans, element, bean, configuration).record(nanos);
+		histogram(this.configurations, configuration, null, configuration).record(nanos);
+	}
+
+	/**
+	 * The histograms for each bean, keyed by element (configuration class and method
+	 * name).
+	 */
+	Map<String, Histogram> getBeans() {
+		return this.beans;
+	}
+
+	/**
+	 * The histograms for all the beans owned by each configuration class.
+	 */
+	Map<String, Histogram> getConfigurations() {
+		return this.configurations;
+	}
+
+	/**
+	 * Call back with every histogram, now and whenever a new one is created (e.g. when a
+	 * prototype bean is created for the first time after startup).
+	 * @param callback the callback
+	 */
+	void forEach(Consumer<Histogram> callback) {
+		this.callbacks.add(callback);
+		this.beans.values().forEach(callback);
+		this.configurations.values().forEach(callback);
+	}
+
+	private Histogram histogram(Map<String, Histogram> histograms, String key,
+			String bean, String configuration) {
+		Histogram histogram = histograms.get(key);
+		if (histogram == null) {
+			Histogram created = new Histogram(bean, configuration);
+			histogram = histograms.computeIfAbsent(key, name -> created);
+			if (histogram == created) {
+				for (Consumer<Histogram> callback : this.callbacks) {
+					callback.accept(created);
+				}
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * A latency histogram in the style of HdrHistogram: values are counted in buckets
+	 * for each power of two, split into 16 sub-buckets, so every value is recorded to
+	 * within about 6%, whatever its magnitude, in a fixed amount of memory. Recording is
+	 * lock free.
+	 */
+	static final class Histogram {
+
+		private static final int SUB_BUCKET_BITS = 4;
+
+		private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+		private final String bean;
+
+		private final String configuration;
+
+		private final AtomicLongArray counts = new AtomicLongArray(
+				(64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+
+		private final LongAdder count = new LongAdder();
+
+		private final LongAdder total = new LongAdder();
+
+		private final AtomicLong max = new AtomicLong();
+
+		Histogram(String bean, String configuration) {
+			this.bean = bean;
+			this.configuration = configuration;
+		}
+
+		/**
+		 * The bean name, or null if this is the histogram for a configuration class.
+		 */
+		String getBean() {
+			return this.bean;
+		}
+
+		String getConfiguration() {
+			return this.configuration;
+		}
+
+		void record(long nanos) {
+			long value = Math.max(nanos, 0);
+			this.counts.incrementAndGet(index(value));
+			this.count.increment();
+			this.total.add(value);
+			this.max.accumulateAndGet(value, Math::max);
+		}
+
+		long getCount() {
+			return this.count.sum();
+		}
+
+		long getTotalNanos() {
+			return this.total.sum();
+		}
+
+		long getMaxNanos() {
+			return this.max.get();
+		}
+
+		/**
+		 * The value at a percentile: the highest value that is equivalent (to within the
+		 * precision of the histogram) to the value that is at or above the fraction
+		 * provided of all the values.
+		 * @param percentile the percentile (between 0 and 1)
+		 * @return the value in nanoseconds
+		 */
+		long getValueAtPercentile(double percentile) {
+			long count = getCount();
+			if (count == 0) {
+				return 0;
+			}
+			long target = Math.max(1, (long) Math.ceil(percentile * count));
+			long seen = 0;
+			for (int i = 0; i < this.counts.length(); i++) {
+				seen += this.counts.get(i);
+				if (seen >= target) {
+					return Math.min(highest(i), getMaxNanos());
+				}
+			}
+			return getMaxNanos();
+		}
+
+		static int index(long value) {
+			if (value < SUB_BUCKETS) {
+				return (int) value;
+			}
+			int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+			int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+			return (shift + 1) * SUB_BUCKETS + sub;
+		}
+
+		static long highest(int index) {
+			int bucket = index / SUB_BUCKETS;
+			int sub = index % SUB_BUCKETS;
+			if (bucket == 0) {
+				return sub;
+			}
+			int shift = bucket - 1;
+			return ((long) (SUB_BUCKETS + sub) << shift) + (1L << shift) - 1;
+		}
+
+	}
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflect;
+
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import org.springframework.boot.reflect.CreationMetrics.Histogram;
+
+/**
+ * Publishes the {@link CreationMetrics} histograms as Micrometer meters: a timer (count
+ * and total time) and gauges for the maximum and some percentiles, for each bean (tagged
+ * with the bean name and configuration class) and for each configuration class. Only
+ * registered when the metrics are switched on and Micrometer is on the classpath.
+ *
+ * @author Dave Syer
+ *
+ */
+class CreationMetricsBinder implements MeterBinder {
+
+	private static final String BEAN_METER = "spring.functional.bean.creation";
+
+	private static final String CONFIGURATION_METER = "spring.functional.configuration.creation";
+
+	private static final double[] PERCENTILES = { 0.5, 0.95, 0.99 };
+
+	private final CreationMetrics metrics;
+
+	CreationMetricsBinder(CreationMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		this.metrics.forEach(histogram -> bind(registry, histogram));
+	}
+
+	private void bind(MeterRegistry registry, Histogram histogram) {
+		String name = histogram.getBean() == null ? CONFIGURATION_METER : BEAN_METER;
+		Tags tags = histogram.getBean() == null
+				? Tags.of("configuration", histogram.getConfiguration())
+				: Tags.of("bean", histogram.getBean(), "configuration",
+						histogram.getConfiguration());
+		FunctionTimer.builder(name, histogram, Histogram::getCount,
+				Histogram::getTotalNanos, TimeUnit.NANOSECONDS).tags(tags)
+				.description("Time spent in instance suppliers").register(registry);
+		Gauge.builder(name + ".max", histogram,
+				value -> value.getMaxNanos() / 1e9).tags(tags).baseUnit("seconds")
+				.register(registry);
+		for (double percentile : PERCENTILES) {
+			Gauge.builder(name + ".percentile", histogram,
+					value -> value.getValueAtPercentile(percentile) / 1e9)
+					.tags(tags).tag("phi", String.valueOf(percentile))
+					.baseUnit("seconds").register(registry);
+		}
+	}
+
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflect;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.util.ClassUtils;
+
+/**
+ * A {@link StartupListener} that commits a Java Flight Recorder event for each call, so
+ * that the registration of functional beans can be seen in the same recording as GC,
+ * class loading and JIT activity. JFR only knows when an event was committed, so the
+ * start time and duration of the work are also recorded as fields. The events are only
+ * written if a recording is running and they are enabled in its settings.
+ *
+ * @author Dave Syer
+ *
+ */
+class FlightRecorderListener implements StartupListener {
+
+	/**
+	 * Flag to switch on the flight recorder events (default false). Ignored if the JVM
+	 * does not support JFR.
+	 */
+	static final String ENABLED = "spring.functional.jfr.enabled";
+
+	private static final boolean PRESENT = ClassUtils.isPresent("jdk.jfr.Event",
+			FlightRecorderListener.class.getClassLoader());
+
+	static boolean isEnabled(Environment environment) {
+		return PRESENT && environment.getProperty(ENABLED, Boolean.class, false);
+	}
+
+	/**
+	 * Install a listener in the context if it is switched on in the environment.
+	 * @param context the application context
+	 */
+	static void install(GenericApplicationContext context) {
+		if (isEnabled(context.getEnvironment())) {
+			StartupListener.register(context.getDefaultListableBeanFactory(),
+					new FlightRecorderListener());
+		}
+	}
+
+	/**
+	 * Record the work done on the sources of an application before the context is
+	 * created.
+	 * @param sources the number of sources
+	 * @param functional whether the functional initializers are being used
+	 * @param start the start time
+	 * @param nanos the time taken
+	 */
+	static void starting(int sources, boolean functional, long start, long nanos) {
+		StartingEvent event = new StartingEvent();
+		if (event.shouldCommit()) {
+			event.sources = sources;
+			event.functional = functional;
+			event.start = start;
+			event.nanos = nanos;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void selected(String[] candidates, long start, long nanos) {
+		SelectionEvent event = new SelectionEvent();
+		if (event.shouldCommit()) {
+			event.candidates = candidates.length;
+			event.start = start;
+			event.nanos = nanos;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void initialized(String initializer, long start, long nanos) {
+		InitializerEvent event = new InitializerEvent();
+		if (event.shouldCommit()) {
+			event.initializer = initializer;
+			event.start = start;
+			event.nanos = nanos;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void evaluated(String element, String skippedBy, long start, long nanos) {
+		ConditionEvent event = new ConditionEvent();
+		if (event.shouldCommit()) {
+			event.element = element;
+			event.skippedBy = skippedBy;
+			event.start = start;
+			event.nanos = nanos;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void registered(String element, long start, long nanos) {
+		RegistrationEvent event = new RegistrationEvent();
+		if (event.shouldCommit()) {
+			event.element = element;
+			event.start = start;
+			event.nanos = nanos;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void supplied(String element, long start, long nanos) {
+		SupplierEvent event = new SupplierEvent();
+		if (event.shouldCommit()) {
+			event.element = element;
+			event.start = start;
+			event.nanos = nanos;
+			event.commit();
+		}
+	}
+
+	@Name("org.springframework.boot.reflect.Starting")
+	@Label("Application Starting")
+	@Category({ "Spring", "Functional" })
+	@Description("Inspection of the application sources")
+	static class StartingEvent extends Event {
+
+		@Label("Sources")
+		int sources;
+
+		@Label("Functional")
+		boolean functional;
+
+		@Label("Start (nanoTime)")
+		long start;
+
+		@Label("Duration")
+		@Timespan(Timespan.NANOSECONDS)
+		long nanos;
+
+	}
+
+	@Name("org.springframework.boot.reflect.Selection")
+	@Label("Candidate Selection")
+	@Category({ "Spring", "Functional" })
+	@Description("Selection and sorting of the autoconfiguration candidates")
+	static class SelectionEvent extends Event {
+
+		@Label("Candidates")
+		int candidates;
+
+		@Label("Start (nanoTime)")
+		long start;
+
+		@Label("Duration")
+		@Timespan(Timespan.NANOSECONDS)
+		long nanos;
+
+	}
+
+	@Name("org.springframework.boot.reflect.Initializer")
+	@Label("Context Initializer")
+	@Category({ "Spring", "Functional" })
+	@Description("An application context initializer")
+	static class InitializerEvent extends Event {
+
+		@Label("Initializer")
+		String initializer;
+
+		@Label("Start (nanoTime)")
+		long start;
+
+		@Label("Duration")
+		@Timespan(Timespan.NANOSECONDS)
+		long nanos;
+
+	}
+
+	@Name("org.springframework.boot.reflect.Condition")
+	@Label("Condition Evaluation")
+	@Category({ "Spring", "Functional" })
+	@Description("Evaluation of the conditions on a configuration class or @Bean method")
+	static class ConditionEvent extends Event {
+
+		@Label("Element")
+		String element;
+
+		@Label("Skipped By")
+		String skippedBy;
+
+		@Label("Start (nanoTime)")
+		long start;
+
+		@Label("Duration")
+		@Timespan(Timespan.NANOSECONDS)
+		long nanos;
+
+	}
+
+	@Name("org.springframework.boot.reflect.Registration")
+	@Label("Bean Registration")
+	@Category({ "Spring", "Functional" })
+	@Description("Registration of the bean definition for a configuration class or @Bean method")
+	static class RegistrationEvent extends Event {
+
+		@Label("Element")
+		String element;
+
+		@Label("Start (nanoTime)")
+		long start;
+
+		@Label("Duration")
+		@Timespan(Timespan.NANOSECONDS)
+		long nanos;
+
+	}
+
+	@Name("org.springframework.boot.reflect.Supplier")
+	@Label("Instance Supplier")
+	@Category({ "Spring", "Functional" })
+	@Description("Creation of a bean from a configuration class or @Bean method")
+	static class SupplierEvent extends Event {
+
+		@Label("Element")
+		String element;
+
+		@Label("Start (nanoTime)")
+		long start;
+
+		@Label("Duration")
+		@Timespan(Timespan.NANOSECONDS)
+		long nanos;
+
+	}
+
+}
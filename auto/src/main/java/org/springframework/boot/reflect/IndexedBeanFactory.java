@@ -0,0 +1,268 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflect;
+
+import java.lang.annotation.Annotation;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanDefinitionStoreException;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerApplicationContext;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.ResolvableType;
+import org.springframework.lang.Nullable;
+
+/**
+ * A {@link DefaultListableBeanFactory} that keeps a {@link TypeIndex} up to date as bean
+ * definitions are registered and singletons are created, and uses it to answer by-type
+ * lookups (including the ones made when autowiring), so they cost as much as the number
+ * of matches instead of the number of beans. Lookups the index cannot answer are handled
+ * as normal.
+ *
+ * @author Dave Syer
+ *
+ */
+class IndexedBeanFactory extends DefaultListableBeanFactory {
+
+	private final TypeIndex index = new TypeIndex(this);
+
+	private final ThreadLocal<String> requester = new ThreadLocal<>();
+
+	private volatile UsageRecorder recorder;
+
+	private volatile ParallelInstantiator instantiator;
+
+	private volatile boolean instantiating;
+
+	TypeIndex getTypeIndex() {
+		return this.index;
+	}
+
+	void setUsageRecorder(UsageRecorder recorder) {
+		this.recorder = recorder;
+	}
+
+	void setParallelInstantiator(ParallelInstantiator instantiator) {
+		this.instantiator = instantiator;
+	}
+
+	@Override
+	public void preInstantiateSingletons() throws BeansException {
+		ParallelInstantiator instantiator = this.instantiator;
+		this.instantiating = true;
+		try {
+			if (instantiator != null) {
+				instantiator.start();
+			}
+			super.preInstantiateSingletons();
+		}
+		finally {
+			this.instantiating = false;
+			if (instantiator != null) {
+				instantiator.finish();
+				this.instantiator = null;
+			}
+		}
+	}
+
+	@Override
+	protected <T> T doGetBean(String name, @Nullable Class<T> requiredType,
+			@Nullable Object[] args, boolean typeCheckOnly) throws BeansException {
+		ParallelInstantiator instantiator = this.instantiator;
+		if (instantiator != null && instantiator.isWorker()) {
+			instantiator.check(name, canonicalName(transformedBeanName(name)));
+		}
+		UsageRecorder recorder = this.recorder;
+		if (recorder == null) {
+			return super.doGetBean(name, requiredType, args, typeCheckOnly);
+		}
+		String beanName = canonicalName(transformedBeanName(name));
+		String requester = this.requester.get();
+		// Requests for eager initialization do not count as usage
+		if (requester != null || !this.instantiating) {
+			recorder.requested(requester, beanName);
+		}
+		this.requester.set(beanName);
+		try {
+			return super.doGetBean(name, requiredType, args, typeCheckOnly);
+		}
+		finally {
+			if (requester == null) {
+				this.requester.remove();
+			}
+			else {
+				this.requester.set(requester);
+			}
+		}
+	}
+
+	@Override
+	public void registerBeanDefinition(String beanName, BeanDefinition beanDefinition)
+			throws BeanDefinitionStoreException {
+		super.registerBeanDefinition(beanName, beanDefinition);
+		this.index.add(beanName);
+	}
+
+	/**
+	 * Register a bean definition whose type is already known (e.g. the generic return
+	 * type of a <code>@Bean</code> method), so that it is indexed with that type straight
+	 * away, instead of working out a type from the definition first.
+	 * @param beanName the bean name
+	 * @param beanDefinition the bean definition
+	 * @param type the type of the bean (or null if it is not known)
+	 */
+	void registerBeanDefinition(String beanName, BeanDefinition beanDefinition,
+			@Nullable ResolvableType type) throws BeanDefinitionStoreException {
+		super.registerBeanDefinition(beanName, beanDefinition);
+		if (type != null) {
+			this.index.add(beanName, type);
+		}
+		else {
+			this.index.add(beanName);
+		}
+	}
+
+	@Override
+	public void removeBeanDefinition(String beanName)
+			throws NoSuchBeanDefinitionException {
+		super.removeBeanDefinition(beanName);
+		this.index.remove(beanName);
+	}
+
+	@Override
+	protected void addSingleton(String beanName, Object singletonObject) {
+		super.addSingleton(beanName, singletonObject);
+		this.index.created(beanName, singletonObject);
+		ParallelInstantiator instantiator = this.instantiator;
+		if (instantiator != null) {
+			instantiator.created(beanName);
+		}
+	}
+
+	@Override
+	@Nullable
+	protected Object getSingleton(String beanName, boolean allowEarlyReference) {
+		ParallelInstantiator instantiator = this.instantiator;
+		if (instantiator != null && instantiator.isWorker()
+				&& !containsSingleton(beanName)
+				&& isSingletonCurrentlyInCreation(beanName)) {
+			// The super class would wait for the main thread to finish creating it
+			instantiator.unavailable("Bean " + beanName);
+		}
+		return super.getSingleton(beanName, allowEarlyReference);
+	}
+
+	@Override
+	@Nullable
+	public Class<?> getType(String name) throws NoSuchBeanDefinitionException {
+		typeCheck(name);
+		return super.getType(name);
+	}
+
+	@Override
+	public boolean isTypeMatch(String name, ResolvableType typeToMatch)
+			throws NoSuchBeanDefinitionException {
+		typeCheck(name);
+		return super.isTypeMatch(name, typeToMatch);
+	}
+
+	private void typeCheck(String name) {
+		ParallelInstantiator instantiator = this.instantiator;
+		if (instantiator != null && instantiator.isWorker()
+				&& !containsSingleton(canonicalName(transformedBeanName(name)))) {
+			// The super class might lock the singletons to create a factory bean just
+			// to find its type, and the main thread holds that lock
+			instantiator.unavailable("Type of bean " + name);
+		}
+	}
+
+	@Override
+	public String[] getBeanNamesForType(ResolvableType type) {
+		String[] names = this.index.getBeanNamesForType(type, true);
+		if (names == null) {
+			unindexed(type);
+		}
+		return names != null ? names : super.getBeanNamesForType(type);
+	}
+
+	@Override
+	public String[] getBeanNamesForType(@Nullable Class<?> type,
+			boolean includeNonSingletons, boolean allowEagerInit) {
+		// The index includes the products of factory beans that have not been created,
+		// which the super class leaves out if it cannot create them
+		String[] names = type == null || !allowEagerInit ? null
+				: this.index.getBeanNamesForType(ResolvableType.forRawClass(type),
+						includeNonSingletons);
+		if (names == null) {
+			unindexed(type);
+		}
+		return names != null ? names
+				: super.getBeanNamesForType(type, includeNonSingletons, allowEagerInit);
+	}
+
+	@Override
+	public String[] getBeanNamesForAnnotation(Class<? extends Annotation> annotationType) {
+		unindexed(annotationType);
+		return super.getBeanNamesForAnnotation(annotationType);
+	}
+
+	private void unindexed(@Nullable Object type) {
+		ParallelInstantiator instantiator = this.instantiator;
+		if (instantiator != null && instantiator.isWorker()) {
+			// The super class checks the type of every bean, including the ones that
+			// are being created on the main thread
+			instantiator.unavailable("Lookup by " + type);
+		}
+	}
+
+	/**
+	 * A {@link GenericApplicationContext} with an indexed bean factory.
+	 */
+	static class Generic extends GenericApplicationContext {
+
+		Generic() {
+			super(new IndexedBeanFactory());
+		}
+
+	}
+
+	/**
+	 * A {@link ServletWebServerApplicationContext} with an indexed bean factory.
+	 */
+	static class Servlet extends ServletWebServerApplicationContext {
+
+		Servlet() {
+			super(new IndexedBeanFactory());
+		}
+
+	}
+
+	/**
+	 * A {@link ReactiveWebServerApplicationContext} with an indexed bean factory.
+	 */
+	static class Reactive extends ReactiveWebServerApplicationContext {
+
+		Reactive() {
+			super(new IndexedBeanFactory());
+		}
+
+	}
+
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflect;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.DependencyDescriptor;
+import org.springframework.core.CollectionFactory;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ResolvableType;
+
+/**
+ * Everything needed to create a bean from a <code>@Bean</code> method or a constructor,
+ * computed once when the bean definition is registered: the {@link Invoker}, a
+ * {@link DependencyDescriptor} per parameter, and the name of the bean that owns the
+ * method. A plan does not depend on a bean factory, so it can be bound to more than
+ * one.
+ *
+ * @author Dave Syer
+ *
+ */
+final class InjectionPlan {
+
+	/**
+	 * The name of the bean definition attribute holding the plan.
+	 */
+	static final String ATTRIBUTE = InjectionPlan.class.getName();
+
+	private final Invoker invoker;
+
+	private final Executable executable;
+
+	private final String element;
+
+	private final String beanName;
+
+	private final String factoryBeanName;
+
+	private final DependencyDescriptor[] descriptors;
+
+	private InjectionPlan(Invoker invoker, Executable executable, Class<?> owner,
+			String beanName, String factoryBeanName) {
+		this.invoker = invoker;
+		this.executable = executable;
+		this.element = executable instanceof Method
+				? owner.getName() + "#" + executable.getName() : owner.getName();
+		this.beanName = beanName;
+		this.factoryBeanName = factoryBeanName;
+		this.descriptors = new DependencyDescriptor[executable.getParameterCount()];
+		for (int i = 0; i < this.descriptors.length; i++) {
+			MethodParameter parameter = MethodParameter.forExecutable(executable, i);
+			DependencyDescriptor descriptor = new DependencyDescriptor(parameter,
+					isRequired(parameter));
+			// Generic parameters of an inherited method are resolved against the owner
+			descriptor.setContainingClass(owner);
+			this.descriptors[i] = descriptor;
+		}
+	}
+
+	private static boolean isRequired(MethodParameter parameter) {
+		// Optional or @Nullable, and lazy providers that can be empty
+		return !parameter.isOptional()
+				&& !ObjectFactory.class.isAssignableFrom(parameter.getParameterType());
+	}
+
+	/**
+	 * Create a plan for a <code>@Bean</code> method.
+	 * @param method the method
+	 * @param owner the configuration class that the method was found on (which might be
+	 * a subclass of the class that declares it)
+	 * @param beanName the name of the bean it creates
+	 * @param factoryBeanName the name of the bean that owns the method
+	 * @return a plan
+	 */
+	public static InjectionPlan of(Method method, Class<?> owner, String beanName,
+			String factoryBeanName) {
+		return new InjectionPlan(Invoker.of(method), method, owner, beanName,
+				Modifier.isStatic(method.getModifiers()) ? null : factoryBeanName);
+	}
+
+	/**
+	 * Create a plan for a constructor.
+	 * @param constructor the constructor
+	 * @param beanName the name of the bean it creates
+	 * @return a plan
+	 */
+	public static InjectionPlan of(Constructor<?> constructor, String beanName) {
+		return new InjectionPlan(Invoker.of(constructor), constructor,
+				constructor.getDeclaringClass(), beanName, null);
+	}
+
+	public String getBeanName() {
+		return this.beanName;
+	}
+
+	/**
+	 * The method or constructor that creates the bean.
+	 */
+	Executable getExecutable() {
+		return this.executable;
+	}
+
+	/**
+	 * The name of the element that creates the bean, as reported to a
+	 * {@link StartupListener}: the configuration class name, plus "#" and the method name
+	 * for a <code>@Bean</code> method.
+	 */
+	String getElement() {
+		return this.element;
+	}
+
+	/**
+	 * Create an instance supplier that resolves the dependencies of the plan in the bean
+	 * factory provided. The owning bean (if there is one) is looked up by name the first
+	 * time, and remembered if it is a singleton.
+	 * @param beanFactory the bean factory
+	 * @return a supplier for the bean
+	 */
+	public Supplier<Object> bind(ConfigurableListableBeanFactory beanFactory) {
+		return new Supplier<Object>() {
+
+			private volatile Object target;
+
+			@Override
+			public Object get() {
+				return InjectionPlan.this.invoker.invoke(target(),
+						params(beanFactory));
+			}
+
+			private Object target() {
+				if (InjectionPlan.this.factoryBeanName == null) {
+					return null;
+				}
+				Object target = this.target;
+				if (target == null) {
+					target = beanFactory.getBean(InjectionPlan.this.factoryBeanName);
+					if (beanFactory.isSingleton(InjectionPlan.this.factoryBeanName)) {
+						this.target = target;
+					}
+				}
+				return target;
+			}
+
+		};
+	}
+
+	/**
+	 * Resolve the owning bean and the dependencies of the plan now, in the bean factory
+	 * provided, and return a supplier that only calls the method or constructor (e.g. on
+	 * another thread).
+	 * @param beanFactory the bean factory
+	 * @return a supplier for the bean
+	 */
+	Supplier<Object> prepare(ConfigurableListableBeanFactory beanFactory) {
+		Object target = this.factoryBeanName == null ? null
+				: beanFactory.getBean(this.factoryBeanName);
+		Object[] params = params(beanFactory);
+		return () -> this.invoker.invoke(target, params);
+	}
+
+	/**
+	 * The names of the beans that the plan needs (as far as the bean factory can tell
+	 * without creating anything): the owning bean and the candidates for each parameter,
+	 * including the elements of collections and the targets of lazy providers.
+	 * @param beanFactory the bean factory
+	 * @return the bean names
+	 */
+	Set<String> dependencies(ConfigurableListableBeanFactory beanFactory) {
+		Set<String> names = new LinkedHashSet<>();
+		if (this.factoryBeanName != null) {
+			names.add(this.factoryBeanName);
+		}
+		for (DependencyDescriptor descriptor : this.descriptors) {
+			Class<?> type = element(descriptor.getResolvableType());
+			if (type != null && type != Object.class) {
+				Collections.addAll(names,
+						beanFactory.getBeanNamesForType(type, true, false));
+			}
+		}
+		names.remove(this.beanName);
+		return names;
+	}
+
+	private static Class<?> element(ResolvableType type) {
+		if (type.isArray()) {
+			return type.getComponentType().resolve();
+		}
+		Class<?> raw = type.resolve();
+		if (raw == null) {
+			return null;
+		}
+		if (Map.class.isAssignableFrom(raw)) {
+			return type.asMap().resolveGeneric(1);
+		}
+		if (Collection.class.isAssignableFrom(raw) || Optional.class == raw
+				|| ObjectFactory.class.isAssignableFrom(raw)) {
+			return type.getGeneric(0).resolve();
+		}
+		return raw;
+	}
+
+	private Object[] params(ConfigurableListableBeanFactory beanFactory) {
+		if (this.descriptors.length == 0) {
+			return new Object[0];
+		}
+		Object[] params = new Object[this.descriptors.length];
+		Set<String> autowired = new LinkedHashSet<>(this.descriptors.length);
+		for (int i = 0; i < params.length; i++) {
+			params[i] = resolve(beanFactory, this.descriptors[i], autowired);
+		}
+		for (String name : autowired) {
+			if (beanFactory.containsBean(name)) {
+				beanFactory.registerDependentBean(name, this.beanName);
+			}
+		}
+		return params;
+	}
+
+	private Object resolve(ConfigurableListableBeanFactory beanFactory,
+			DependencyDescriptor descriptor, Set<String> autowired) {
+		try {
+			return beanFactory.resolveDependency(descriptor, this.beanName, autowired,
+					null);
+		}
+		catch (NoSuchBeanDefinitionException e) {
+			// Like a @Bean method in a @Configuration class: no beans is an empty
+			// collection, not a failure
+			Class<?> type = descriptor.getDependencyType();
+			if (type.isArray()) {
+				return Array.newInstance(type.getComponentType(), 0);
+			}
+			if (CollectionFactory.isApproximableCollectionType(type)) {
+				return CollectionFactory.createCollection(type, 0);
+			}
+			if (CollectionFactory.isApproximableMapType(type)) {
+				return CollectionFactory.createMap(type, 0);
+			}
+			throw e;
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflect;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Calls a {@code @Bean} method or a constructor reflectively. It is made accessible
+ * once, when the bean definition is registered, instead of on every call. The arguments
+ * are passed as they are, so a varargs parameter takes an array.
+ *
+ * @author Dave Syer
+ *
+ */
+final class Invoker {
+
+	private final Method method;
+
+	private final Constructor<?> constructor;
+
+	private Invoker(Method method, Constructor<?> constructor) {
+		this.method = method;
+		this.constructor = constructor;
+	}
+
+	public static Invoker of(Method method) {
+		ReflectionUtils.makeAccessible(method);
+		return new Invoker(method, null);
+	}
+
+	public static Invoker of(Constructor<?> constructor) {
+		ReflectionUtils.makeAccessible(constructor);
+		return new Invoker(null, constructor);
+	}
+
+	/**
+	 * Call the method or constructor.
+	 * @param target the instance to call the method on (null if it is static or a
+	 * constructor)
+	 * @param args the arguments
+	 * @return the result
+	 */
+	public Object invoke(Object target, Object[] args) {
+		if (this.method != null) {
+			return ReflectionUtils.invokeMethod(this.method, target, args);
+		}
+		try {
+			return this.constructor.newInstance(args);
+		}
+		catch (Exception e) {
+			ReflectionUtils.handleReflectionException(e);
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflect;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.BeanFactoryUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Creates the instances of independent singletons in parallel while the bean factory
+ * pre-instantiates singletons. The dependencies of every bean registered with an
+ * {@link InjectionPlan} are known before the context is refreshed, so as soon as all
+ * the dependencies of a bean exist, its <code>@Bean</code> method (or constructor) is
+ * called on a bounded pool, and the instance is handed to the bean factory when it gets
+ * to that bean. Post processing (and everything else the bean factory does with the
+ * instance) stays on the main thread, because the bean factory creates singletons one at
+ * a time under a single lock, and the main thread holds that lock while it waits for a
+ * worker. So a worker only uses beans that already exist, and by-type lookups that the
+ * {@link TypeIndex} can answer: if a bean needs anything else (e.g. a bean that does not
+ * exist yet, through a provider inside its method, or a lookup by a type that the index
+ * does not know about) the work is thrown away and the bean is created on the main
+ * thread as normal. Beans in a cycle are never ready before the bean factory gets to
+ * them, so they are also created as normal.
+ * <p>
+ * An instance that a worker created before the work was thrown away is never post
+ * processed or destroyed, so beans with a destroy callback that can be seen from their
+ * declared type (a destroy method, <code>@PreDestroy</code>, {@link DisposableBean} or
+ * {@link AutoCloseable}) are not created in parallel. A bean declared with a type that
+ * does not show its destroy callbacks (e.g. an interface) can still be created in
+ * parallel, and if the work is thrown away, that instance is not destroyed.
+ *
+ * @author Dave Syer
+ *
+ */
+class ParallelInstantiator {
+
+	/**
+	 * Flag to switch on the parallel creation of singletons with injection plans
+	 * (default false).
+	 */
+	static final String ENABLED = "spring.functional.instantiation.enabled";
+
+	/**
+	 * The number of threads to use for creating singletons in parallel (default is the
+	 * number of available processors).
+	 */
+	static final String THREADS = "spring.functional.instantiation.threads";
+
+	private static final Log logger = LogFactory.getLog(ParallelInstantiator.class);
+
+	private static final Object UNAVAILABLE = new Object();
+
+	private static final String PRE_DESTROY = "javax.annotation.PreDestroy";
+
+	private final ThreadLocal<Task> current = new ThreadLocal<>();
+
+	private final Map<String, Task> tasks = new ConcurrentHashMap<>();
+
+	private final Map<String, List<Task>> waiting = new ConcurrentHashMap<>();
+
+	private final IndexedBeanFactory beanFactory;
+
+	private final int threads;
+
+	private ExecutorService executor;
+
+	private volatile boolean running;
+
+	ParallelInstantiator(IndexedBeanFactory beanFactory, int threads) {
+		this.beanFactory = beanFactory;
+		this.threads = threads;
+	}
+
+	static boolean isEnabled(Environment environment) {
+		return environment.getProperty(ENABLED, Boolean.class, false);
+	}
+
+	/**
+	 * Prepare the eager singletons with injection plans in the context provided to be
+	 * created in parallel.
+	 * @param context the application context
+	 */
+	static void install(GenericApplicationContext context) {
+		if (!(context.getDefaultListableBeanFactory() instanceof IndexedBeanFactory)) {
+			logger.warn("Parallel instantiation needs an indexed bean factory");
+			return;
+		}
+		IndexedBeanFactory beanFactory = (IndexedBeanFactory) context
+				.getDefaultListableBeanFactory();
+		ParallelInstantiator instantiator = new ParallelInstantiator(beanFactory,
+				context.getEnvironment().getProperty(THREADS, Integer.class,
+						Runtime.getRuntime().availableProcessors()));
+		for (String name : beanFactory.getBeanDefinitionNames()) {
+			BeanDefinition definition = beanFactory.getBeanDefinition(name);
+			if (!(definition instanceof AbstractBeanDefinition)
+					|| !(definition.getAttribute(
+							InjectionPlan.ATTRIBUTE) instanceof InjectionPlan)
+					|| !definition.isSingleton() || definition.isLazyInit()
+					|| definition.isAbstract()) {
+				continue;
+			}
+			AbstractBeanDefinition bean = (AbstractBeanDefinition) definition;
+			InjectionPlan plan = (InjectionPlan) definition
+					.getAttribute(InjectionPlan.ATTRIBUTE);
+			Supplier<?> supplier = bean.getInstanceSupplier();
+			if (supplier == null || hasDestroyCallback(bean, plan)) {
+				continue;
+			}
+			instantiator.tasks.put(name,
+					instantiator.new Task(name, supplier, plan));
+			bean.setInstanceSupplier(() -> instantiator.get(name, supplier));
+		}
+		if (!instantiator.tasks.isEmpty()) {
+			// Merged definitions may already have been cached with the old supplier
+			beanFactory.clearMetadataCache();
+			beanFactory.setParallelInstantiator(instantiator);
+		}
+	}
+
+	/**
+	 * Check if a bean has a destroy callback that can be seen from its declared type. An
+	 * instance that is thrown away would not be destroyed, so such a bean is never
+	 * created on a worker.
+	 * @param definition the bean definition
+	 * @param plan the injection plan for the bean
+	 * @return true if the bean might need to be destroyed
+	 */
+	static boolean hasDestroyCallback(AbstractBeanDefinition definition,
+			InjectionPlan plan) {
+		Executable executable = plan.getExecutable();
+		Class<?> type = executable instanceof Method
+				? ((Method) executable).getReturnType()
+				: executable.getDeclaringClass();
+		String destroyMethod = definition.getDestroyMethodName();
+		if (AbstractBeanDefinition.INFER_METHOD.equals(destroyMethod)) {
+			if (ClassUtils.hasMethod(type, "close")
+					|| ClassUtils.hasMethod(type, "shutdown")) {
+				return true;
+			}
+		}
+		else if (StringUtils.hasText(destroyMethod)) {
+			return true;
+		}
+		if (DisposableBean.class.isAssignableFrom(type)
+				|| AutoCloseable.class.isAssignableFrom(type)) {
+			return true;
+		}
+		for (Method method : ReflectionUtils.getUniqueDeclaredMethods(type)) {
+			for (Annotation annotation : method.getAnnotations()) {
+				if (annotation.annotationType().getName().equals(PRE_DESTROY)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Work out which beans are ready to be created and start creating them. Called by the
+	 * bean factory before it pre-instantiates singletons.
+	 */
+	void start() {
+		AtomicInteger count = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(this.threads, runnable -> {
+			Thread thread = new Thread(runnable,
+					"spring-functional-instantiation-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.running = true;
+		List<Task> ready = new ArrayList<>();
+		for (Task task : this.tasks.values()) {
+			int remaining = 0;
+			for (String dependency : task.plan.dependencies(this.beanFactory)) {
+				if (!this.beanFactory.containsSingleton(dependency)) {
+					this.waiting.computeIfAbsent(dependency, key -> new ArrayList<>())
+							.add(task);
+					remaining++;
+				}
+			}
+			task.remaining.set(remaining);
+			if (remaining == 0) {
+				ready.add(task);
+			}
+		}
+		ready.forEach(this.executor::execute);
+	}
+
+	/**
+	 * Stop creating beans in parallel. Called by the bean factory when it has finished
+	 * pre-instantiating singletons. Anything that was not created yet is created as normal
+	 * from now on.
+	 */
+	void finish() {
+		this.running = false;
+		this.waiting.clear();
+		this.tasks.clear();
+		if (this.executor != null) {
+			this.executor.shutdown();
+		}
+	}
+
+	/**
+	 * A singleton has been created, so the beans that were waiting only for it can be
+	 * started.
+	 * @param name the bean name
+	 */
+	void created(String name) {
+		if (!this.running) {
+			return;
+		}
+		List<Task> tasks = this.waiting.remove(name);
+		if (tasks == null) {
+			return;
+		}
+		for (Task task : tasks) {
+			if (task.remaining.decrementAndGet() == 0) {
+				this.executor.execute(task);
+			}
+		}
+	}
+
+	/**
+	 * Whether the current thread is creating a bean in parallel.
+	 * @return true if it is a worker creating a bean
+	 */
+	boolean isWorker() {
+		return this.current.get() != null;
+	}
+
+	/**
+	 * Check that a bean can be used by a worker. Only a bean that already exists can be
+	 * used by a worker, so that it never waits for a lock held by the main thread (which
+	 * might be waiting for the worker).
+	 * @param name the name that was requested
+	 * @param beanName the canonical bean name
+	 */
+	void check(String name, String beanName) {
+		Object singleton = this.beanFactory.containsSingleton(beanName)
+				? this.beanFactory.getSingleton(beanName)
+				: null;
+		if (singleton == null || (singleton instanceof FactoryBean
+				&& !BeanFactoryUtils.isFactoryDereference(name))) {
+			unavailable("Bean " + beanName);
+		}
+	}
+
+	/**
+	 * Give up creating the current bean on a worker, because it needs something that
+	 * might mean waiting for the main thread. It is created on the main thread instead.
+	 * @param description a description of what is not available
+	 */
+	void unavailable(String description) {
+		Task task = this.current.get();
+		// Even if the exception is swallowed the result will not be used
+		task.aborted = true;
+		throw new IllegalStateException(description + " is not available to create "
+				+ task.name + " in parallel");
+	}
+
+	private Object get(String name, Supplier<?> supplier) {
+		Task task = this.tasks.remove(name);
+		if (task == null || task.claim()) {
+			return supplier.get();
+		}
+		Object value = task.result.join();
+		return value == UNAVAILABLE ? supplier.get() : value;
+	}
+
+	private class Task implements Runnable {
+
+		private final String name;
+
+		private final Supplier<?> supplier;
+
+		private final InjectionPlan plan;
+
+		private final AtomicInteger remaining = new AtomicInteger();
+
+		private final AtomicBoolean claimed = new AtomicBoolean();
+
+		private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+		private volatile boolean aborted;
+
+		Task(String name, Supplier<?> supplier, InjectionPlan plan) {
+			this.name = name;
+			this.supplier = supplier;
+			this.plan = plan;
+		}
+
+		boolean claim() {
+			return this.claimed.compareAndSet(false, true);
+		}
+
+		@Override
+		public void run() {
+			if (!claim()) {
+				// The main thread got there first
+				return;
+			}
+			ParallelInstantiator.this.current.set(this);
+			try {
+				Object value = this.supplier.get();
+				this.result.complete(this.aborted ? UNAVAILABLE : value);
+			}
+			catch (Throwable e) {
+				// The main thread will try again and report the error properly
+				if (!this.aborted && logger.isDebugEnabled()) {
+					logger.debug("Cannot create " + this.name + " in parallel", e);
+				}
+				this.result.complete(UNAVAILABLE);
+			}
+			finally {
+				ParallelInstantiator.this.current.remove();
+			}
+		}
+
+	}
+
+}
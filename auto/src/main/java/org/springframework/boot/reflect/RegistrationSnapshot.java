@@ -0,0 +1,388 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflect;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.EnumerablePropertySource;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.ObjectUtils;
+import org.springframework.util.ResourceUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * The registrations made by an {@link AutoRegistrar} once all conditions have been
+ * evaluated, in the order they were made (plus the autoconfiguration candidates they
+ * were made from), so that they can be saved to disk and replayed
+ * on the next start without evaluating the conditions again. A snapshot is only valid
+ * for the same fingerprint, which is computed from the classpath (names, sizes and
+ * modification times of its jars, and of all the files in its directories), the Java
+ * version and the environment.
+ *
+ * @author Dave Syer
+ *
+ */
+class RegistrationSnapshot {
+
+	/**
+	 * Flag to switch on the use of snapshots (default false).
+	 */
+	static final String ENABLED = "spring.functional.snapshot.enabled";
+
+	/**
+	 * The file to store the snapshot in (default is in the temp directory, and its name
+	 * includes the fingerprint).
+	 */
+	static final String FILE = "spring.functional.snapshot.file";
+
+	private static final Log logger = LogFactory.getLog(RegistrationSnapshot.class);
+
+	private static final int MAGIC = 0x53464e33;
+
+	/**
+	 * Environment variables that conditions read, even though they do not start with
+	 * "spring" (e.g. to detect a cloud platform).
+	 */
+	private static final String[] CONDITION_VARIABLES = { "VCAP_APPLICATION",
+			"VCAP_SERVICES", "DYNO", "HC_LANDSCAPE", "KUBERNETES_SERVICE_HOST",
+			"KUBERNETES_SERVICE_PORT" };
+
+	enum Kind {
+		CONFIGURATION, PROPERTIES, REGISTRAR, BEAN;
+	}
+
+	private final String fingerprint;
+
+	private final List<Entry> entries = new ArrayList<>();
+
+	private String[] candidates = new String[0];
+
+	RegistrationSnapshot(String fingerprint) {
+		this.fingerprint = fingerprint;
+	}
+
+	public String getFingerprint() {
+		return this.fingerprint;
+	}
+
+	public List<Entry> getEntries() {
+		return Collections.unmodifiableList(this.entries);
+	}
+
+	void add(Kind kind, String type, String name, String source) {
+		this.entries.add(new Entry(kind, type, name, source));
+	}
+
+	/**
+	 * The autoconfiguration candidates that were selected (e.g. so that training mode can
+	 * tell which autoconfigurations are in play when the snapshot is replayed).
+	 * @return the candidate class names
+	 */
+	public String[] getCandidates() {
+		return this.candidates.clone();
+	}
+
+	void setCandidates(String[] candidates) {
+		this.candidates = candidates.clone();
+	}
+
+	/**
+	 * Read a snapshot from the file provided.
+	 * @param file the file to read
+	 * @param fingerprint the fingerprint the snapshot must have been saved with
+	 * @return the snapshot, or null if the file is missing, unreadable or stale
+	 */
+	static RegistrationSnapshot read(File file, String fingerprint) {
+		if (!file.exists()) {
+			return null;
+		}
+		try (DataInputStream input = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file)))) {
+			if (input.readInt() != MAGIC || !fingerprint.equals(input.readUTF())) {
+				return null;
+			}
+			RegistrationSnapshot snapshot = new RegistrationSnapshot(fingerprint);
+			String[] candidates = new String[input.readInt()];
+			for (int i = 0; i < candidates.length; i++) {
+				candidates[i] = input.readUTF();
+			}
+			snapshot.candidates = candidates;
+			Kind[] kinds = Kind.values();
+			int count = input.readInt();
+			for (int i = 0; i < count; i++) {
+				Kind kind = kinds[input.readByte()];
+				String type = input.readUTF();
+				String name = input.readBoolean() ? input.readUTF() : null;
+				String source = input.readBoolean() ? input.readUTF() : null;
+				snapshot.add(kind, type, name, source);
+			}
+			return snapshot;
+		}
+		catch (IOException | RuntimeException e) {
+			logger.warn("Cannot read registration snapshot from " + file, e);
+			return null;
+		}
+	}
+
+	void write(File file) {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		try (DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file)))) {
+			output.writeInt(MAGIC);
+			output.writeUTF(this.fingerprint);
+			output.writeInt(this.candidates.length);
+			for (String candidate : this.candidates) {
+				output.writeUTF(candidate);
+			}
+			output.writeInt(this.entries.size());
+			for (Entry entry : this.entries) {
+				output.writeByte(entry.getKind().ordinal());
+				output.writeUTF(entry.getType());
+				output.writeBoolean(entry.getName() != null);
+				if (entry.getName() != null) {
+					output.writeUTF(entry.getName());
+				}
+				output.writeBoolean(entry.getSource() != null);
+				if (entry.getSource() != null) {
+					output.writeUTF(entry.getSource());
+				}
+			}
+		}
+		catch (IOException e) {
+			logger.warn("Cannot write registration snapshot to " + file, e);
+		}
+	}
+
+	static File file(Environment environment, String fingerprint) {
+		String file = environment.getProperty(FILE);
+		if (StringUtils.hasText(file)) {
+			return new File(file);
+		}
+		return new File(System.getProperty("java.io.tmpdir"),
+				"spring-functional-" + fingerprint + ".snapshot");
+	}
+
+	/**
+	 * Compute a fingerprint of the classpath and environment. Any change in the jars or
+	 * directories on the classpath (including the files nested in the directories), in the
+	 * Java version, or in the properties (excluding system properties and environment
+	 * variables, except those that start with "spring" and the ones that conditions are
+	 * known to read), results in a different fingerprint.
+	 * @param classLoader the class loader whose classpath is used
+	 * @param environment the environment
+	 * @return a fingerprint
+	 */
+	static String fingerprint(ClassLoader classLoader, Environment environment) {
+		StringBuilder builder = new StringBuilder();
+		for (String entry : classpath(classLoader)) {
+			builder.append(entry).append(";");
+		}
+		for (Map.Entry<String, String> entry : properties(environment).entrySet()) {
+			builder.append(entry.getKey()).append("=").append(entry.getValue())
+					.append(";");
+		}
+		// Read directly by some conditions (e.g. @ConditionalOnJava)
+		builder.append(System.getProperty("java.version")).append(";");
+		builder.append(System.getProperty("java.specification.version")).append(";");
+		builder.append(Arrays.toString(environment.getActiveProfiles()));
+		return DigestUtils
+				.md5DigestAsHex(builder.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static Set<String> classpath(ClassLoader classLoader) {
+		Set<String> entries = new LinkedHashSet<>();
+		Set<File> seen = new HashSet<>();
+		for (String path : StringUtils.delimitedListToStringArray(
+				System.getProperty("java.class.path", ""), File.pathSeparator)) {
+			if (StringUtils.hasText(path)) {
+				entries.add(describe(path, new File(path), seen));
+			}
+		}
+		ClassLoader loader = classLoader;
+		while (loader != null) {
+			if (loader instanceof URLClassLoader) {
+				for (URL url : ((URLClassLoader) loader).getURLs()) {
+					entries.add(describe(url, seen));
+				}
+			}
+			loader = loader.getParent();
+		}
+		return entries;
+	}
+
+	private static String describe(URL url, Set<File> seen) {
+		try {
+			URL archive = ResourceUtils.isJarURL(url)
+					? ResourceUtils.extractArchiveURL(url) : url;
+			if (ResourceUtils.isFileURL(archive)) {
+				return describe(url.toString(), ResourceUtils.getFile(archive), seen);
+			}
+		}
+		catch (Exception e) {
+			// Fall back to just the URL
+		}
+		return url.toString();
+	}
+
+	private static String describe(String name, File file, Set<File> seen) {
+		if (!seen.add(file.getAbsoluteFile())) {
+			return name;
+		}
+		if (file.isDirectory()) {
+			// The directory itself does not change when a nested file does
+			return name + ":" + directory(file.toPath());
+		}
+		return name + ":" + file.length() + ":" + file.lastModified();
+	}
+
+	private static String directory(Path root) {
+		StringBuilder builder = new StringBuilder();
+		try (Stream<Path> paths = Files.walk(root)) {
+			paths.filter(Files::isRegularFile).sorted().forEach(path -> {
+				File file = path.toFile();
+				builder.append(root.relativize(path)).append(":").append(file.length())
+						.append(":").append(file.lastModified()).append(";");
+			});
+		}
+		catch (IOException | RuntimeException e) {
+			// Changes cannot be detected, so make sure the snapshot is not used
+			return "unreadable:" + System.nanoTime();
+		}
+		return DigestUtils
+				.md5DigestAsHex(builder.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static Map<String, String> properties(Environment environment) {
+		Map<String, String> properties = new TreeMap<>();
+		if (!(environment instanceof ConfigurableEnvironment)) {
+			return properties;
+		}
+		for (PropertySource<?> source : ((ConfigurableEnvironment) environment)
+				.getPropertySources()) {
+			if (!(source instanceof EnumerablePropertySource)) {
+				continue;
+			}
+			boolean system = StandardEnvironment.SYSTEM_PROPERTIES_PROPERTY_SOURCE_NAME
+					.equals(source.getName())
+					|| StandardEnvironment.SYSTEM_ENVIRONMENT_PROPERTY_SOURCE_NAME
+							.equals(source.getName());
+			for (String name : ((EnumerablePropertySource<?>) source)
+					.getPropertyNames()) {
+				if (properties.containsKey(name) || (system
+						&& !name.toLowerCase().startsWith("spring")
+						&& !ObjectUtils.containsElement(CONDITION_VARIABLES, name))) {
+					continue;
+				}
+				properties.put(name, value(environment, name));
+			}
+		}
+		return properties;
+	}
+
+	private static String value(Environment environment, String name) {
+		try {
+			return environment.getProperty(name);
+		}
+		catch (RuntimeException e) {
+			// Unresolvable placeholder, for instance
+			return e.getClass().getName();
+		}
+	}
+
+	static class Entry {
+
+		private final Kind kind;
+
+		private final String type;
+
+		private final String name;
+
+		private final String source;
+
+		Entry(Kind kind, String type, String name, String source) {
+			this.kind = kind;
+			this.type = type;
+			this.name = name;
+			this.source = source;
+		}
+
+		/**
+		 * @return the kind of registration
+		 */
+		public Kind getKind() {
+			return this.kind;
+		}
+
+		/**
+		 * @return the name of the class registered (or the importing class for a
+		 * {@link Kind#REGISTRAR})
+		 */
+		public String getType() {
+			return this.type;
+		}
+
+		/**
+		 * @return the name of the method for a {@link Kind#BEAN}, or the name of the
+		 * registrar class for a {@link Kind#REGISTRAR}
+		 */
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * @return the name of the autoconfiguration (or user configuration) that the
+		 * registration came from, if known
+		 */
+		public String getSource() {
+			return this.source;
+		}
+
+	}
+
+}
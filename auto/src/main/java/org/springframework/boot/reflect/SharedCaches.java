@@ -0,0 +1,174 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflect;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionOutcome;
+import org.springframework.boot.type.classreading.ConcurrentReferenceCachingMetadataReaderFactory;
+import org.springframework.context.annotation.Condition;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+import org.springframework.lang.Nullable;
+
+/**
+ * Caches that only depend on the class loader, so they can be shared by all the contexts
+ * in the JVM that use the same one (e.g. a bootstrap context and its child, or the
+ * contexts in a test suite): the metadata read from class files, the conditions on each
+ * class and method, the outcomes of the conditions that only depend on the classpath, and
+ * the class path and autoconfiguration indexes. The JVM-wide map only holds the class
+ * loaders and the caches weakly, and each bean factory holds on to the caches it uses, so
+ * they live as long as a context that needs them and a class loader that is no longer in
+ * use (e.g. after a devtools restart) is not pinned.
+ *
+ * @author Dave Syer
+ *
+ */
+final class SharedCaches {
+
+	/**
+	 * Flag to switch off the sharing of caches between contexts (default true). If it is
+	 * false each context has its own.
+	 */
+	static final String ENABLED = "spring.functional.cache.enabled";
+
+	/**
+	 * The name of the singleton holding the caches in the bean factory.
+	 */
+	static final String BEAN_NAME = "org.springframework.boot.reflect.sharedCaches";
+
+	private static final Map<ClassLoader, WeakReference<SharedCaches>> caches = new WeakHashMap<>();
+
+	private final ClassLoader classLoader;
+
+	private final MetadataReaderFactory metadataReaderFactory;
+
+	private final Map<String, Condition> conditions = new ConcurrentHashMap<>();
+
+	private final Map<String, List<Condition>> chains = new ConcurrentHashMap<>();
+
+	private final Map<String, ConditionOutcome> outcomes = new ConcurrentHashMap<>();
+
+	private volatile ClassPathIndex classPathIndex;
+
+	private AutoConfigurationIndex autoConfigurationIndex;
+
+	private boolean indexed;
+
+	private SharedCaches(ClassLoader classLoader) {
+		this.classLoader = classLoader;
+		this.metadataReaderFactory = new ConcurrentReferenceCachingMetadataReaderFactory(
+				new DefaultResourceLoader(classLoader));
+	}
+
+	/**
+	 * The caches for a bean factory. The first call for a bean factory finds the caches
+	 * for the class loader provided (or creates them), and they are remembered in the
+	 * bean factory.
+	 * @param beanFactory the bean factory
+	 * @param classLoader the class loader
+	 * @param environment the environment
+	 * @return the caches
+	 */
+	static SharedCaches get(ConfigurableListableBeanFactory beanFactory,
+			ClassLoader classLoader, Environment environment) {
+		synchronized (beanFactory) {
+			if (!beanFactory.containsSingleton(BEAN_NAME)) {
+				beanFactory.registerSingleton(BEAN_NAME,
+						environment.getProperty(ENABLED, Boolean.class, true)
+								? shared(classLoader)
+								: new SharedCaches(classLoader));
+			}
+			return (SharedCaches) beanFactory.getSingleton(BEAN_NAME);
+		}
+	}
+
+	private static SharedCaches shared(ClassLoader classLoader) {
+		synchronized (caches) {
+			WeakReference<SharedCaches> reference = caches.get(classLoader);
+			SharedCaches result = reference == null ? null : reference.get();
+			if (result == null) {
+				result = new SharedCaches(classLoader);
+				caches.put(classLoader, new WeakReference<>(result));
+			}
+			return result;
+		}
+	}
+
+	MetadataReaderFactory getMetadataReaderFactory() {
+		return this.metadataReaderFactory;
+	}
+
+	/**
+	 * Condition instances by class name.
+	 */
+	Map<String, Condition> getConditions() {
+		return this.conditions;
+	}
+
+	/**
+	 * The sorted conditions for each annotated element.
+	 */
+	Map<String, List<Condition>> getChains() {
+		return this.chains;
+	}
+
+	/**
+	 * The outcomes of conditions that only depend on the classpath, by annotated element
+	 * and condition.
+	 */
+	Map<String, ConditionOutcome> getOutcomes() {
+		return this.outcomes;
+	}
+
+	ClassPathIndex getClassPathIndex() {
+		ClassPathIndex index = this.classPathIndex;
+		if (index == null) {
+			synchronized (this) {
+				index = this.classPathIndex;
+				if (index == null) {
+					index = ClassPathIndex.load(this.classLoader);
+					this.classPathIndex = index;
+				}
+			}
+		}
+		return index;
+	}
+
+	@Nullable
+	synchronized AutoConfigurationIndex getAutoConfigurationIndex(
+			Environment environment, Predicate<String> present) {
+		if (!environment.getProperty(AutoConfigurationIndex.ENABLED, Boolean.class,
+				true)) {
+			return null;
+		}
+		if (!this.indexed) {
+			this.autoConfigurationIndex = AutoConfigurationIndex.load(this.classLoader,
+					environment, present);
+			this.indexed = true;
+		}
+		return this.autoConfigurationIndex;
+	}
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflect;
+
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+/**
+ * Actuator endpoint that exposes the time spent on each configuration class and
+ * <code>@Bean</code> method during startup. Only registered when the startup profiler is
+ * switched on and actuator is on the classpath.
+ *
+ * @author Dave Syer
+ *
+ */
+@Endpoint(id = "startup")
+public class StartupEndpoint {
+
+	private final StartupProfiler profiler;
+
+	StartupEndpoint(StartupProfiler profiler) {
+		this.profiler = profiler;
+	}
+
+	@ReadOperation
+	public Map<String, Object> startup() {
+		return this.profiler.report();
+	}
+
+}
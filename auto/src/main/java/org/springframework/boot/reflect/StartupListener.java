@@ -0,0 +1,124 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflect;
+
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.lang.Nullable;
+
+/**
+ * Callback for the work done by an {@link AutoRegistrar} on each element (a
+ * configuration class or a <code>@Bean</code> method, named as
+ * <code>class#method</code>). Times are from {@link System#nanoTime()}, and each call is
+ * made on the thread that did the work, possibly concurrently with others. A registrar
+ * only makes the calls (and reads the clock) if there is a listener in the bean factory,
+ * so there is no overhead otherwise.
+ *
+ * @author Dave Syer
+ *
+ */
+interface StartupListener {
+
+	/**
+	 * The name of the singleton holding the listener in the bean factory.
+	 */
+	String BEAN_NAME = "org.springframework.boot.reflect.startupListener";
+
+	/**
+	 * The autoconfiguration candidates have been selected (but not yet evaluated).
+	 * @param candidates the names of the candidates in the order they will be evaluated
+	 * @param start the start time
+	 * @param nanos the time taken
+	 */
+	default void selected(String[] candidates, long start, long nanos) {
+	}
+
+	/**
+	 * An application context initializer has finished.
+	 * @param initializer the class name of the initializer
+	 * @param start the start time
+	 * @param nanos the time taken
+	 */
+	default void initialized(String initializer, long start, long nanos) {
+	}
+
+	/**
+	 * The conditions on an element have been evaluated.
+	 * @param element the name of the element
+	 * @param skippedBy the class name of the condition that did not match, or null if
+	 * the element was not skipped
+	 * @param start the start time
+	 * @param nanos the time taken
+	 */
+	default void evaluated(String element, @Nullable String skippedBy, long start,
+			long nanos) {
+	}
+
+	/**
+	 * The bean definition for an element has been registered (including loading the
+	 * class for a configuration class).
+	 * @param element the name of the element
+	 * @param start the start time
+	 * @param nanos the time taken
+	 */
+	default void registered(String element, long start, long nanos) {
+	}
+
+	/**
+	 * A class has been processed by a registrar: its conditions, its nested and imported
+	 * classes and its bean definitions (apart from the ones that were deferred).
+	 * @param className the name of the class
+	 * @param start the start time
+	 * @param nanos the time taken
+	 */
+	default void processed(String className, long start, long nanos) {
+	}
+
+	/**
+	 * The instance supplier for an element has returned. The time includes the creation
+	 * of any dependencies that were not yet available.
+	 * @param element the name of the element
+	 * @param start the start time
+	 * @param nanos the time taken
+	 */
+	default void supplied(String element, long start, long nanos) {
+	}
+
+	@Nullable
+	static StartupListener find(ConfigurableListableBeanFactory beanFactory) {
+		if (beanFactory.containsSingleton(BEAN_NAME)) {
+			return (StartupListener) beanFactory.getSingleton(BEAN_NAME);
+		}
+		return null;
+	}
+
+	/**
+	 * Add a listener to the bean factory, alongside any that are already there.
+	 * @param beanFactory the bean factory
+	 * @param listener the listener to add
+	 */
+	static void register(ConfigurableListableBeanFactory beanFactory,
+			StartupListener listener) {
+		synchronized (beanFactory) {
+			if (!beanFactory.containsSingleton(BEAN_NAME)) {
+				beanFactory.registerSingleton(BEAN_NAME, new CompositeStartupListener());
+			}
+			((CompositeStartupListener) beanFactory.getSingleton(BEAN_NAME))
+					.add(listener);
+		}
+	}
+
+}
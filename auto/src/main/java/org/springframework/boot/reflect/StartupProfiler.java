@@ -0,0 +1,278 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflect;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * A {@link StartupListener} that accumulates the time spent on each element, so it can
+ * be reported by the {@link StartupEndpoint actuator endpoint} and dumped as JSON when
+ * the context is closed.
+ *
+ * @author Dave Syer
+ *
+ */
+class StartupProfiler
+		implements StartupListener, ApplicationListener<ContextClosedEvent> {
+
+	/**
+	 * Flag to switch on the startup profiler (default false).
+	 */
+	static final String ENABLED = "spring.functional.profiler.enabled";
+
+	/**
+	 * The file to dump the profile to as JSON when the context is closed (default is
+	 * <code>spring-functional-startup.json</code> in the temp directory).
+	 */
+	static final String FILE = "spring.functional.profiler.file";
+
+	private static final Log logger = LogFactory.getLog(StartupProfiler.class);
+
+	private static final String ENDPOINT_CLASS = "org.springframework.boot.actuate.endpoint.annotation.Endpoint";
+
+	private final Map<String, Record> records = new ConcurrentHashMap<>();
+
+	private final File file;
+
+	private volatile int candidates;
+
+	private volatile long selection;
+
+	StartupProfiler(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Install a profiler in the context if it is switched on in the environment.
+	 * @param context the application context
+	 */
+	static void install(GenericApplicationContext context) {
+		Environment environment = context.getEnvironment();
+		if (!environment.getProperty(ENABLED, Boolean.class, false)) {
+			return;
+		}
+		String file = environment.getProperty(FILE);
+		StartupProfiler profiler = new StartupProfiler(StringUtils.hasText(file)
+				? new File(file)
+				: new File(System.getProperty("java.io.tmpdir"),
+						"spring-functional-startup.json"));
+		StartupListener.register(context.getDefaultListableBeanFactory(), profiler);
+		context.addApplicationListener(profiler);
+		if (ClassUtils.isPresent(ENDPOINT_CLASS, context.getClassLoader())) {
+			context.registerBean(StartupEndpoint.class,
+					() -> new StartupEndpoint(profiler));
+		}
+	}
+
+	@Override
+	public void selected(String[] candidates, long start, long nanos) {
+		this.candidates = candidates.length;
+		this.selection = nanos;
+	}
+
+	@Override
+	public void evaluated(String element, String skippedBy, long start, long nanos) {
+		record(element).evaluated(skippedBy, nanos);
+	}
+
+	@Override
+	public void registered(String element, long start, long nanos) {
+		record(element).registered(nanos);
+	}
+
+	@Override
+	public void supplied(String element, long start, long nanos) {
+		record(element).supplied(nanos);
+	}
+
+	@Override
+	public void onApplicationEvent(ContextClosedEvent event) {
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(this.file),
+				StandardCharsets.UTF_8)) {
+			writer.write(json(report()));
+		}
+		catch (IOException e) {
+			logger.warn("Cannot write startup profile to " + this.file, e);
+		}
+	}
+
+	/**
+	 * A summary of the profile, with the elements ordered by the total time spent on
+	 * them (slowest first).
+	 * @return the profile
+	 */
+	Map<String, Object> report() {
+		long conditions = 0;
+		long registration = 0;
+		long supplier = 0;
+		List<Map<String, Object>> elements = new ArrayList<>();
+		for (Record record : this.records.values()) {
+			Map<String, Object> map = record.toMap();
+			conditions += (Long) map.get("conditionNanos");
+			registration += (Long) map.get("registrationNanos");
+			supplier += (Long) map.get("supplierNanos");
+			elements.add(map);
+		}
+		// Sort on a copy of the values, since the records can still change
+		elements.sort(Comparator.comparingLong(StartupProfiler::total).reversed());
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("candidates", this.candidates);
+		report.put("selectionNanos", this.selection);
+		report.put("conditionNanos", conditions);
+		report.put("registrationNanos", registration);
+		report.put("supplierNanos", supplier);
+		report.put("elements", elements);
+		return report;
+	}
+
+	private static long total(Map<String, Object> element) {
+		return (Long) element.get("conditionNanos")
+				+ (Long) element.get("registrationNanos")
+				+ (Long) element.get("supplierNanos");
+	}
+
+	private Record record(String element) {
+		Record record = this.records.get(element);
+		if (record == null) {
+			record = this.records.computeIfAbsent(element, Record::new);
+		}
+		return record;
+	}
+
+	static String json(Object value) {
+		StringBuilder builder = new StringBuilder();
+		json(builder, value);
+		return builder.toString();
+	}
+
+	private static void json(StringBuilder builder, Object value) {
+		if (value instanceof Map) {
+			builder.append("{");
+			boolean first = true;
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				if (!first) {
+					builder.append(",");
+				}
+				first = false;
+				json(builder, String.valueOf(entry.getKey()));
+				builder.append(":");
+				json(builder, entry.getValue());
+			}
+			builder.append("}");
+		}
+		else if (value instanceof Collection) {
+			builder.append("[");
+			boolean first = true;
+			for (Object item : (Collection<?>) value) {
+				if (!first) {
+					builder.append(",");
+				}
+				first = false;
+				json(builder, item);
+			}
+			builder.append("]");
+		}
+		else if (value instanceof Number || value instanceof Boolean) {
+			builder.append(value);
+		}
+		else if (value == null) {
+			builder.append("null");
+		}
+		else {
+			builder.append("\"");
+			for (char c : value.toString().toCharArray()) {
+				if (c == '"' || c == '\\') {
+					builder.append('\\').append(c);
+				}
+				else if (c < 0x20) {
+					builder.append(String.format("\\u%04x", (int) c));
+				}
+				else {
+					builder.append(c);
+				}
+			}
+			builder.append("\"");
+		}
+	}
+
+	private static class Record {
+
+		private final String name;
+
+		private long conditions;
+
+		private String skippedBy;
+
+		private long registration;
+
+		private long supplier;
+
+		Record(String name) {
+			this.name = name;
+		}
+
+		synchronized void evaluated(String skippedBy, long nanos) {
+			this.conditions += nanos;
+			this.skippedBy = skippedBy;
+		}
+
+		synchronized void registered(long nanos) {
+			this.registration += nanos;
+		}
+
+		synchronized void supplied(long nanos) {
+			this.supplier += nanos;
+		}
+
+		synchronized Map<String, Object> toMap() {
+			Map<String, Object> map = new LinkedHashMap<>();
+			map.put("name", this.name);
+			map.put("conditionNanos", this.conditions);
+			map.put("skipped", this.skippedBy != null);
+			if (this.skippedBy != null) {
+				map.put("skippedBy", this.skippedBy);
+			}
+			map.put("registrationNanos", this.registration);
+			map.put("supplierNanos", this.supplier);
+			return map;
+		}
+
+	}
+
+}
@@ -0,0 +1,459 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflect;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.type.MethodMetadata;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * An index from types (including all their supertypes and interfaces) to the names of
+ * the beans that have those types, so that by-type lookups only cost as much as the
+ * number of matches. The {@link AutoRegistrar} adds each bean as it registers it, with
+ * its full generic type, and anything else is picked up from the bean definitions (or the
+ * singleton instances) without instantiating anything. Bean definitions whose type
+ * cannot be determined that way (e.g. a factory method with no target type, or a
+ * {@link FactoryBean} with no known object type) make the index incomplete for the types
+ * that they might have (anything assignable to the declared return type of a factory
+ * method, if there is one), and lookups for those types are passed on to the bean
+ * factory. Names are returned in the order they were first added (the registration order
+ * of the bean definitions), whatever order the beans are created in. Lookups do not lock,
+ * so they can be made from many threads at once.
+ *
+ * @author Dave Syer
+ *
+ */
+class TypeIndex {
+
+	/**
+	 * The name of the singleton holding the index in the bean factory.
+	 */
+	static final String BEAN_NAME = "org.springframework.boot.reflect.typeIndex";
+
+	/**
+	 * The attribute used by some bean definition registrars (e.g. Spring Data) to
+	 * declare the object type of a {@link FactoryBean}.
+	 */
+	private static final String FACTORY_BEAN_OBJECT_TYPE = "factoryBeanObjectType";
+
+	private static final String NULL_BEAN = "org.springframework.beans.factory.support.NullBean";
+
+	private final ConfigurableListableBeanFactory beanFactory;
+
+	private final Map<Class<?>, Map<Long, String>> names = new ConcurrentHashMap<>();
+
+	private final Map<String, Long> order = new ConcurrentHashMap<>();
+
+	private final Map<String, Class<?>> classes = new ConcurrentHashMap<>();
+
+	private final Map<String, ResolvableType> types = new ConcurrentHashMap<>();
+
+	/**
+	 * The beans whose type is not known, with a type that they are known to be
+	 * assignable to (Object if there is nothing better).
+	 */
+	private final Map<String, Class<?>> unknown = new ConcurrentHashMap<>();
+
+	private long sequence;
+
+	private int definitions = -1;
+
+	private int singletons = -1;
+
+	TypeIndex(ConfigurableListableBeanFactory beanFactory) {
+		this.beanFactory = beanFactory;
+	}
+
+	/**
+	 * The index shared by everything that uses the bean factory provided.
+	 * @param beanFactory the bean factory
+	 * @return the index
+	 */
+	static TypeIndex get(ConfigurableListableBeanFactory beanFactory) {
+		if (beanFactory instanceof IndexedBeanFactory) {
+			return ((IndexedBeanFactory) beanFactory).getTypeIndex();
+		}
+		synchronized (beanFactory) {
+			if (!beanFactory.containsSingleton(BEAN_NAME)) {
+				beanFactory.registerSingleton(BEAN_NAME, new TypeIndex(beanFactory));
+			}
+			return (TypeIndex) beanFactory.getSingleton(BEAN_NAME);
+		}
+	}
+
+	/**
+	 * Bring the index up to date with any definitions or singletons that were added (or
+	 * removed) without telling it. Cheap if nothing has changed.
+	 */
+	synchronized void update() {
+		int definitions = this.beanFactory.getBeanDefinitionCount();
+		int singletons = this.beanFactory.getSingletonCount();
+		if (definitions == this.definitions && singletons == this.singletons) {
+			return;
+		}
+		if (definitions < this.definitions) {
+			// Something was removed
+			this.names.clear();
+			this.order.clear();
+			this.classes.clear();
+			this.types.clear();
+			this.unknown.clear();
+		}
+		for (String name : this.beanFactory.getBeanDefinitionNames()) {
+			if (!isIndexed(name)) {
+				add(name);
+			}
+		}
+		for (String name : this.beanFactory.getSingletonNames()) {
+			if (!isIndexed(name)) {
+				add(name);
+			}
+		}
+		this.definitions = definitions;
+		this.singletons = singletons;
+	}
+
+	private boolean isIndexed(String name) {
+		return this.classes.containsKey(name) || this.unknown.containsKey(name)
+				|| this.classes.containsKey("&" + name);
+	}
+
+	/**
+	 * Add a bean (by name) to the index, working out its type from its definition or its
+	 * instance.
+	 * @param name the bean name
+	 */
+	synchronized void add(String name) {
+		if (!this.beanFactory.containsBeanDefinition(name)) {
+			Object singleton = this.beanFactory.getSingleton(name);
+			if (singleton != null) {
+				created(name, singleton);
+			}
+			return;
+		}
+		BeanDefinition definition = this.beanFactory.getBeanDefinition(name);
+		if (definition.isAbstract()) {
+			return;
+		}
+		Class<?> type = type(definition);
+		if (type == null) {
+			unknown(name, bound(definition));
+			return;
+		}
+		put(name, definition, ResolvableType.forClass(type));
+	}
+
+	/**
+	 * Add a bean to the index with a known type. If it is a {@link FactoryBean} the
+	 * factory is added with the type provided and the bean with its object type.
+	 * @param name the bean name
+	 * @param type the type of the bean (e.g. the generic return type of a
+	 * <code>@Bean</code> method)
+	 */
+	synchronized void add(String name, ResolvableType type) {
+		put(name, this.beanFactory.containsBeanDefinition(name)
+				? this.beanFactory.getBeanDefinition(name)
+				: null, type);
+	}
+
+	private void put(String name, @Nullable BeanDefinition definition,
+			@Nullable ResolvableType type) {
+		Class<?> resolved = type == null ? null : type.resolve();
+		if (resolved != null && FactoryBean.class.isAssignableFrom(resolved)) {
+			put("&" + name, type);
+			put(name, objectType(definition, type));
+		}
+		else {
+			clear("&" + name);
+			put(name, type);
+		}
+	}
+
+	/**
+	 * A singleton has been created, so its actual class is known. The generic type it
+	 * was registered with is kept if the instance is compatible with it.
+	 * @param name the bean name
+	 * @param instance the instance
+	 */
+	synchronized void created(String name, Object instance) {
+		if (instance instanceof FactoryBean) {
+			put("&" + name, ResolvableType.forClass(instance.getClass()));
+			Class<?> type = ((FactoryBean<?>) instance).getObjectType();
+			put(name, type == null || type == Object.class ? null
+					: ResolvableType.forClass(type));
+			return;
+		}
+		if (NULL_BEAN.equals(instance.getClass().getName())) {
+			// A @Bean method returned null: there is nothing to find by type
+			clear(name);
+			return;
+		}
+		ResolvableType declared = this.types.get(name);
+		put(name, instance.getClass(),
+				declared != null && declared.isInstance(instance) ? declared
+						: ResolvableType.forClass(instance.getClass()));
+	}
+
+	/**
+	 * Remove a bean from the index.
+	 * @param name the bean name
+	 */
+	synchronized void remove(String name) {
+		clear(name);
+		clear("&" + name);
+		this.order.remove(name);
+		this.order.remove("&" + name);
+	}
+
+	private void put(String name, @Nullable ResolvableType type) {
+		Class<?> resolved = type == null ? null : type.resolve();
+		if (resolved == null) {
+			unknown(name, Object.class);
+			return;
+		}
+		put(name, resolved, type);
+	}
+
+	/**
+	 * Update the entry for a bean. Concurrent lookups see either the old type or the new
+	 * one (the name is added to the new types before it is removed from the old ones),
+	 * and its position in the results does not change.
+	 */
+	private void put(String name, Class<?> type, ResolvableType generic) {
+		Long position = this.order.computeIfAbsent(name, key -> this.sequence++);
+		Class<?> previous = this.classes.put(name, type);
+		this.types.put(name, generic);
+		Set<Class<?>> hierarchy = hierarchy(type);
+		for (Class<?> candidate : hierarchy) {
+			this.names.computeIfAbsent(candidate, key -> new ConcurrentSkipListMap<>())
+					.put(position, name);
+		}
+		this.unknown.remove(name);
+		for (Class<?> candidate : hierarchy(previous)) {
+			if (!hierarchy.contains(candidate)) {
+				remove(candidate, position);
+			}
+		}
+	}
+
+	private void unknown(String name, Class<?> bound) {
+		clear(name);
+		this.order.computeIfAbsent(name, key -> this.sequence++);
+		this.unknown.put(name, bound);
+	}
+
+	private void clear(String name) {
+		this.unknown.remove(name);
+		this.types.remove(name);
+		Class<?> previous = this.classes.remove(name);
+		Long position = this.order.get(name);
+		if (position != null) {
+			for (Class<?> candidate : hierarchy(previous)) {
+				remove(candidate, position);
+			}
+		}
+	}
+
+	private void remove(Class<?> type, Long position) {
+		Map<Long, String> names = this.names.get(type);
+		if (names != null) {
+			names.remove(position);
+		}
+	}
+
+	private static Set<Class<?>> hierarchy(@Nullable Class<?> type) {
+		if (type == null) {
+			return Collections.emptySet();
+		}
+		Set<Class<?>> result = new LinkedHashSet<>();
+		for (Class<?> candidate = type; candidate != null; candidate = candidate
+				.getSuperclass()) {
+			result.add(candidate);
+		}
+		result.addAll(ClassUtils.getAllInterfacesForClassAsSet(type));
+		return result;
+	}
+
+	/**
+	 * The names of the beans of the type provided.
+	 * @param type the type (may have generics)
+	 * @param includeNonSingletons whether to include prototypes and other scopes
+	 * @return the bean names or null if the index cannot tell
+	 */
+	@Nullable
+	String[] getBeanNamesForType(@Nullable ResolvableType type,
+			boolean includeNonSingletons) {
+		if (!(this.beanFactory instanceof IndexedBeanFactory)) {
+			update();
+		}
+		Class<?> resolved = type == null ? null : type.resolve();
+		if (resolved == null || isUnknown(resolved)) {
+			return null;
+		}
+		Map<Long, String> names = this.names.getOrDefault(resolved,
+				Collections.emptyMap());
+		List<String> result = new ArrayList<>(names.size());
+		for (String name : names.values()) {
+			ResolvableType candidate = this.types.get(name);
+			if (candidate == null) {
+				// Removed since the names were read
+				continue;
+			}
+			if (type.hasGenerics() && candidate.hasUnresolvableGenerics()) {
+				// Only the bean factory can tell (e.g. from the factory method)
+				return null;
+			}
+			if ((includeNonSingletons || isSingleton(name))
+					&& (!type.hasGenerics() || type.isAssignableFrom(candidate))) {
+				result.add(name);
+			}
+		}
+		return StringUtils.toStringArray(result);
+	}
+
+	private boolean isUnknown(Class<?> type) {
+		for (Class<?> bound : this.unknown.values()) {
+			if (mightBe(bound, type)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Whether an object that is known to be assignable to the bound provided might also
+	 * be assignable to the type provided.
+	 */
+	private static boolean mightBe(Class<?> bound, Class<?> type) {
+		if (type.isAssignableFrom(bound) || bound.isAssignableFrom(type)) {
+			return true;
+		}
+		if (Modifier.isFinal(bound.getModifiers())) {
+			return false;
+		}
+		// A subclass of one of them might implement the other
+		return type.isInterface()
+				|| (bound.isInterface() && !Modifier.isFinal(type.getModifiers()));
+	}
+
+	private boolean isSingleton(String name) {
+		String beanName = name.startsWith("&") ? name.substring(1) : name;
+		if (!this.beanFactory.containsBeanDefinition(beanName)) {
+			return true;
+		}
+		return this.beanFactory.getBeanDefinition(beanName).isSingleton();
+	}
+
+	@Nullable
+	private Class<?> type(BeanDefinition definition) {
+		if (definition instanceof RootBeanDefinition
+				&& ((RootBeanDefinition) definition).getTargetType() != null) {
+			return ((RootBeanDefinition) definition).getTargetType();
+		}
+		if (definition.getFactoryMethodName() != null) {
+			if (definition instanceof AnnotatedBeanDefinition) {
+				MethodMetadata method = ((AnnotatedBeanDefinition) definition)
+						.getFactoryMethodMetadata();
+				if (method != null) {
+					return resolve(method.getReturnTypeName());
+				}
+			}
+			return null;
+		}
+		return resolve(definition.getBeanClassName());
+	}
+
+	/**
+	 * A type that a bean whose type cannot be determined is known to be assignable to: the
+	 * return type of its factory method if there is only one method with that name (and
+	 * it is not a {@link FactoryBean}).
+	 */
+	private Class<?> bound(BeanDefinition definition) {
+		String method = definition.getFactoryMethodName();
+		if (method == null) {
+			return Object.class;
+		}
+		Class<?> factory = definition.getFactoryBeanName() != null
+				? this.classes.get(definition.getFactoryBeanName())
+				: resolve(definition.getBeanClassName());
+		if (factory == null) {
+			return Object.class;
+		}
+		Class<?> result = null;
+		for (Method candidate : ReflectionUtils.getUniqueDeclaredMethods(factory)) {
+			if (candidate.getName().equals(method)) {
+				if (result != null && result != candidate.getReturnType()) {
+					return Object.class;
+				}
+				result = candidate.getReturnType();
+			}
+		}
+		return result == null || result.isPrimitive()
+				|| FactoryBean.class.isAssignableFrom(result) ? Object.class : result;
+	}
+
+	/**
+	 * The object type of a {@link FactoryBean}, or null if it is not known. A factory
+	 * declared as <code>FactoryBean&lt;Object&gt;</code> (e.g. a proxy factory bean) can
+	 * produce anything, so that does not count as knowing the type.
+	 */
+	@Nullable
+	private ResolvableType objectType(@Nullable BeanDefinition definition,
+			ResolvableType factoryType) {
+		Object attribute = definition == null ? null
+				: definition.getAttribute(FACTORY_BEAN_OBJECT_TYPE);
+		if (attribute instanceof Class) {
+			return ResolvableType.forClass((Class<?>) attribute);
+		}
+		if (attribute instanceof String) {
+			Class<?> type = resolve((String) attribute);
+			return type == null ? null : ResolvableType.forClass(type);
+		}
+		ResolvableType generic = factoryType.as(FactoryBean.class).getGeneric();
+		Class<?> resolved = generic.resolve();
+		return resolved == null || resolved == Object.class ? null : generic;
+	}
+
+	@Nullable
+	private Class<?> resolve(@Nullable String className) {
+		ClassLoader classLoader = this.beanFactory.getBeanClassLoader();
+		if (className == null || !ClassUtils.isPresent(className, classLoader)) {
+			return null;
+		}
+		return ClassUtils.resolveClassName(className, classLoader);
+	}
+
+}
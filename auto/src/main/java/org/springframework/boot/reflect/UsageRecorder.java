@@ -0,0 +1,269 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflect;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Records which of the beans registered by each autoconfiguration are actually used
+ * ("training" mode), and writes the autoconfigurations that registered beans but none
+ * that were used to an exclusion manifest when the context is closed. A bean is used if
+ * it is injected into (or looked up by) a bean from somewhere else, if it is looked up
+ * directly after the context has started, or if it is one of the types that the
+ * container calls without injecting (post processors, listeners, lifecycle beans, web
+ * server components etc). Lookups are only seen if the context has an
+ * {@link IndexedBeanFactory}, otherwise only the dependencies that the bean factory
+ * records count as usage.
+ *
+ * @author Dave Syer
+ *
+ */
+class UsageRecorder implements ApplicationListener<ContextClosedEvent> {
+
+	/**
+	 * Flag to switch on training mode (default false).
+	 */
+	static final String ENABLED = "spring.functional.training.enabled";
+
+	/**
+	 * The file to write the exclusion manifest to in training mode (default is
+	 * <code>spring-functional.exclusions</code> in the temp directory).
+	 */
+	static final String FILE = "spring.functional.training.file";
+
+	/**
+	 * Flag to switch off the exclusions from the manifests on the classpath (default
+	 * true). They are always ignored in training mode.
+	 */
+	static final String EXCLUSIONS_ENABLED = "spring.functional.exclusions.enabled";
+
+	/**
+	 * The location of the exclusion manifests on the classpath.
+	 */
+	static final String LOCATION = "META-INF/spring-functional.exclusions";
+
+	private static final Log logger = LogFactory.getLog(UsageRecorder.class);
+
+	private final GenericApplicationContext context;
+
+	private final File file;
+
+	private final Set<String> candidates;
+
+	private final Set<String> used = ConcurrentHashMap.newKeySet();
+
+	private final Map<String, Set<String>> requesters = new ConcurrentHashMap<>();
+
+	UsageRecorder(GenericApplicationContext context, File file, String[] candidates) {
+		this.context = context;
+		this.file = file;
+		this.candidates = new LinkedHashSet<>(Arrays.asList(candidates));
+	}
+
+	static boolean isEnabled(Environment environment) {
+		return environment.getProperty(ENABLED, Boolean.class, false);
+	}
+
+	/**
+	 * Start recording usage in the context provided.
+	 * @param context the application context
+	 * @param candidates the autoconfiguration candidates
+	 */
+	static void install(GenericApplicationContext context, String[] candidates) {
+		String file = context.getEnvironment().getProperty(FILE);
+		UsageRecorder recorder = new UsageRecorder(context,
+				StringUtils.hasText(file) ? new File(file)
+						: new File(System.getProperty("java.io.tmpdir"),
+								"spring-functional.exclusions"),
+				candidates);
+		if (context.getDefaultListableBeanFactory() instanceof IndexedBeanFactory) {
+			((IndexedBeanFactory) context.getDefaultListableBeanFactory())
+					.setUsageRecorder(recorder);
+		}
+		else {
+			logger.warn("Training mode can only see the dependencies that are "
+					+ "recorded by the bean factory");
+		}
+		context.addApplicationListener(recorder);
+	}
+
+	/**
+	 * The autoconfigurations excluded by the manifests on the classpath.
+	 * @param classLoader the class loader to search
+	 * @param environment the environment
+	 * @return the names of the excluded classes
+	 */
+	static Set<String> exclusions(ClassLoader classLoader, Environment environment) {
+		if (isEnabled(environment)
+				|| !environment.getProperty(EXCLUSIONS_ENABLED, Boolean.class, true)) {
+			return Collections.emptySet();
+		}
+		Set<String> result = new LinkedHashSet<>();
+		try {
+			Enumeration<URL> urls = classLoader.getResources(LOCATION);
+			while (urls.hasMoreElements()) {
+				try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+						urls.nextElement().openStream(), StandardCharsets.UTF_8))) {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						line = line.trim();
+						if (!line.isEmpty() && !line.startsWith("#")) {
+							result.add(line);
+						}
+					}
+				}
+			}
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot read " + LOCATION, e);
+		}
+		return result;
+	}
+
+	/**
+	 * A bean has been requested from the bean factory.
+	 * @param requester the name of the bean being created when the request was made, or
+	 * null if it was made from outside
+	 * @param name the name of the bean requested
+	 */
+	void requested(@Nullable String requester, String name) {
+		if (requester == null) {
+			this.used.add(name);
+		}
+		else if (!requester.equals(name)) {
+			this.requesters.computeIfAbsent(name, key -> ConcurrentHashMap.newKeySet())
+					.add(requester);
+		}
+	}
+
+	@Override
+	public void onApplicationEvent(ContextClosedEvent event) {
+		Set<String> exclusions = unused();
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(this.file),
+				StandardCharsets.UTF_8)) {
+			writer.write("# Autoconfigurations with no beans in use\n");
+			for (String exclusion : exclusions) {
+				writer.write(exclusion + "\n");
+			}
+			logger.info("Wrote " + exclusions.size() + " unused autoconfigurations to "
+					+ this.file);
+		}
+		catch (IOException e) {
+			logger.warn("Cannot write exclusion manifest to " + this.file, e);
+		}
+	}
+
+	/**
+	 * The candidates that registered at least one bean, but none that was used.
+	 * @return the names of the unused autoconfigurations
+	 */
+	Set<String> unused() {
+		ConfigurableListableBeanFactory beanFactory = this.context
+				.getDefaultListableBeanFactory();
+		List<Class<?>> infrastructure = new ArrayList<>();
+		for (String type : BackgroundInitializer.EAGER_TYPES) {
+			if (ClassUtils.isPresent(type, this.context.getClassLoader())) {
+				infrastructure.add(ClassUtils.resolveClassName(type,
+						this.context.getClassLoader()));
+			}
+		}
+		Set<String> registered = new TreeSet<>();
+		Set<String> used = new LinkedHashSet<>();
+		for (String name : beanFactory.getBeanDefinitionNames()) {
+			String source = source(beanFactory, name);
+			if (source == null || !this.candidates.contains(source)) {
+				continue;
+			}
+			registered.add(source);
+			if (!used.contains(source)
+					&& isUsed(beanFactory, name, source, infrastructure)) {
+				used.add(source);
+			}
+		}
+		registered.removeAll(used);
+		return registered;
+	}
+
+	private boolean isUsed(ConfigurableListableBeanFactory beanFactory, String name,
+			String source, List<Class<?>> infrastructure) {
+		BeanDefinition definition = beanFactory.getBeanDefinition(name);
+		if (definition.isSingleton() && !beanFactory.containsSingleton(name)) {
+			return false;
+		}
+		if (this.used.contains(name)) {
+			return true;
+		}
+		Class<?> type = beanFactory.getType(name);
+		if (type != null) {
+			for (Class<?> candidate : infrastructure) {
+				if (candidate.isAssignableFrom(type)) {
+					return true;
+				}
+			}
+		}
+		Set<String> requesters = new LinkedHashSet<>(
+				Arrays.asList(beanFactory.getDependentBeans(name)));
+		requesters.addAll(this.requesters.getOrDefault(name, Collections.emptySet()));
+		for (String requester : requesters) {
+			if (!source.equals(source(beanFactory, requester))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Nullable
+	private String source(ConfigurableListableBeanFactory beanFactory, String name) {
+		if (!beanFactory.containsBeanDefinition(name)) {
+			return null;
+		}
+		return (String) beanFactory.getBeanDefinition(name)
+				.getAttribute(AutoRegistrar.SOURCE_ATTRIBUTE);
+	}
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.reflect;
+package org.springframework.boot.reflect;
+
+import java.util.Collections;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class AutoConfigurationIndexTests {
+
+	private AutoConfigurationIndex index = new AutoConfigurationIndex(properties(),
+			name -> !name.equals("com.example.Missing"));
+
+	@Test
+	public void missingClassDropsCandidate() throws Exception {
+		assertThat(index.getCandidates(Collections.emptySet()))
+				.containsExactly("com.example.Foo", "com.example.Spam");
+	}
+
+	@Test
+	public void exclusions() throws Exception {
+		assertThat(index.getCandidates(Collections.singleton("com.example.Spam")))
+				.containsExactly("com.example.Foo");
+	}
+
+	@Test
+	public void nested() throws Exception {
+		assertThat(index.matches("com.example.Foo$Nested")).isFalse();
+		assertThat(index.matches("com.example.Unknown")).isTrue();
+	}
+
+	private static Properties properties() {
+		Properties properties = new Properties();
+		properties.setProperty("candidates",
+				"com.example.Foo,com.example.Bar,com.example.Spam");
+		properties.setProperty("com.example.Foo.onClass", "com.example.Present");
+		properties.setProperty("com.example.Foo$Nested.onClass",
+				"com.example.Present,com.example.Missing");
+		properties.setProperty("com.example.Bar.onClass", "com.example.Missing");
+		return properties;
+	}
+
+}
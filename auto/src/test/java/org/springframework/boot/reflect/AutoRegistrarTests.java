@@ -0,0 +1,325 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.reflect;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.PreDestroy;
+
+import org.junit.Test;
+
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.support.BeanDefinitionOverrideException;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.CommonAnnotationBeanPostProcessor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class AutoRegistrarTests {
+
+	private DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+
+	private AutoRegistrar registrar = new AutoRegistrar(beanFactory, beanFactory,
+			new MockEnvironment(), new DefaultResourceLoader());
+
+	@Test
+	public void genericTypeWithoutCreatingBean() throws Exception {
+		GenericConfiguration.created.set(0);
+		registrar.register(GenericConfiguration.class);
+		assertThat(beanFactory.getBeanNamesForType(
+				ResolvableType.forClassWithGenerics(List.class, String.class)))
+						.containsExactly("strings");
+		assertThat(beanFactory.getBeanNamesForType(
+				ResolvableType.forClassWithGenerics(List.class, Integer.class)))
+						.isEmpty();
+		assertThat(GenericConfiguration.created.get()).isEqualTo(0);
+	}
+
+	@Test
+	public void conditionsSeeBatchedDefinitions() throws Exception {
+		IndexedBeanFactory beanFactory = new IndexedBeanFactory();
+		// Bean creation has started, as it has when a registry post processor runs
+		beanFactory.registerBeanDefinition("started",
+				new RootBeanDefinition(Object.class));
+		beanFactory.getBean("started");
+		new AutoRegistrar(beanFactory, beanFactory, new MockEnvironment(),
+				new DefaultResourceLoader()).register(ConditionalConfiguration.class);
+		assertThat(beanFactory.getBeanDefinitionNames()).containsExactly("started",
+				ConditionalConfiguration.class.getName(), "foo");
+		assertThat(beanFactory.getBeanNamesForType(StringBuilder.class))
+				.containsExactly("foo");
+	}
+
+	@Test
+	public void conditionsOnPlainBeanFactory() throws Exception {
+		registrar.register(ConditionalConfiguration.class);
+		assertThat(beanFactory.getBeanDefinitionNames())
+				.containsExactly(ConditionalConfiguration.class.getName(), "foo");
+	}
+
+	@Test
+	public void classConditionSeesDeferredBeans() throws Exception {
+		registrar.register(OrderedConfiguration.class);
+		assertThat(beanFactory.getBeanDefinitionNames()).containsSubsequence(
+				MapperConfiguration.class.getName(), "mapper",
+				ConverterConfiguration.class.getName(), "converter");
+	}
+
+	@Test
+	public void duplicateBeanNameInBatch() throws Exception {
+		beanFactory.setAllowBeanDefinitionOverriding(false);
+		assertThatExceptionOfType(BeanDefinitionOverrideException.class)
+				.isThrownBy(() -> registrar.register(DuplicateConfiguration.class));
+	}
+
+	@Test
+	public void duplicateBeanNameOverridden() throws Exception {
+		registrar.register(DuplicateConfiguration.class);
+		assertThat(beanFactory.getBean("value")).hasToString("second");
+	}
+
+	@Test
+	public void replayKeepsSource() throws Exception {
+		RegistrationSnapshot snapshot = new RegistrationSnapshot("test");
+		registrar.record(snapshot);
+		registrar.register(GenericConfiguration.class);
+		DefaultListableBeanFactory replayed = new DefaultListableBeanFactory();
+		new AutoRegistrar(replayed, replayed, new MockEnvironment(),
+				new DefaultResourceLoader()).replay(snapshot);
+		assertThat(replayed.getBeanDefinition("strings")
+				.getAttribute(AutoRegistrar.SOURCE_ATTRIBUTE))
+						.isEqualTo(GenericConfiguration.class.getName());
+	}
+
+	@Test
+	public void asyncBean() throws Exception {
+		registrar.register(AsyncConfiguration.class);
+		Object bean = beanFactory.getBean("value");
+		assertThat(AopUtils.isAopProxy(bean)).isTrue();
+		assertThat(bean.toString()).isEqualTo("foo");
+		assertThat(AsyncConfiguration.thread.get().getName())
+				.startsWith("spring-functional-async-");
+	}
+
+	@Test
+	public void asyncThreadsShutDown() throws Exception {
+		registrar.register(AsyncConfiguration.class);
+		assertThat(beanFactory.getBean("value").toString()).isEqualTo("foo");
+		Thread thread = AsyncConfiguration.thread.get();
+		beanFactory.destroySingletons();
+		thread.join(1000);
+		assertThat(thread.isAlive()).isFalse();
+	}
+
+	@Test
+	public void asyncBeanDestroyed() throws Exception {
+		Resource.closed.set(0);
+		Resource.destroyed.set(0);
+		beanFactory.addBeanPostProcessor(new CommonAnnotationBeanPostProcessor());
+		registrar.register(AsyncResourceConfiguration.class);
+		Runnable bean = beanFactory.getBean("resource", Runnable.class);
+		assertThat(bean).isNotInstanceOf(Resource.class);
+		bean.run();
+		beanFactory.destroySingletons();
+		assertThat(Resource.destroyed.get()).isEqualTo(1);
+		assertThat(Resource.closed.get()).isEqualTo(1);
+	}
+
+	@Test
+	public void asyncBeanFails() throws Exception {
+		registrar.register(AsyncFailureConfiguration.class);
+		Runnable bean = beanFactory.getBean("failure", Runnable.class);
+		assertThatExceptionOfType(BeanCreationException.class).isThrownBy(bean::run)
+				.withMessageContaining("background");
+		// Nothing to destroy, and the failure is not thrown again
+		beanFactory.destroySingletons();
+	}
+
+	@Test
+	public void asyncBeanFailsOnRefresh() throws Exception {
+		registrar.register(AsyncFailureConfiguration.class);
+		assertThatExceptionOfType(BeanCreationException.class)
+				.isThrownBy(() -> beanFactory.preInstantiateSingletons())
+				.withMessageContaining("failure")
+				.withMessageContaining("background");
+	}
+
+	@Configuration
+	static class AsyncConfiguration {
+
+		static final AtomicReference<Thread> thread = new AtomicReference<>();
+
+		@Bean
+		public String name() {
+			return "foo";
+		}
+
+		@Bean
+		@AsyncBean
+		public CharSequence value(String name) {
+			thread.set(Thread.currentThread());
+			return new StringBuilder(name);
+		}
+
+	}
+
+	@Configuration
+	static class AsyncResourceConfiguration {
+
+		@Bean
+		@AsyncBean
+		public Runnable resource() {
+			return new Resource();
+		}
+
+	}
+
+	@Configuration
+	static class AsyncFailureConfiguration {
+
+		@Bean
+		@AsyncBean
+		public Runnable failure() {
+			throw new IllegalStateException("Planned");
+		}
+
+	}
+
+	static class Resource implements Runnable, AutoCloseable {
+
+		static final AtomicInteger closed = new AtomicInteger();
+
+		static final AtomicInteger destroyed = new AtomicInteger();
+
+		@Override
+		public void run() {
+		}
+
+		@PreDestroy
+		public void destroy() {
+			destroyed.incrementAndGet();
+		}
+
+		@Override
+		public void close() {
+			closed.incrementAndGet();
+		}
+
+	}
+
+	@Configuration
+	static class ConditionalConfiguration {
+
+		@Bean
+		public StringBuilder foo() {
+			return new StringBuilder();
+		}
+
+		@Bean
+		@ConditionalOnMissingBean(StringBuilder.class)
+		public StringBuilder bar() {
+			return new StringBuilder();
+		}
+
+	}
+
+	@Configuration
+	@Import({ FirstValueConfiguration.class, SecondValueConfiguration.class })
+	static class DuplicateConfiguration {
+
+	}
+
+	@Configuration
+	static class FirstValueConfiguration {
+
+		@Bean
+		public StringBuilder value() {
+			return new StringBuilder("first");
+		}
+
+	}
+
+	@Configuration
+	static class SecondValueConfiguration {
+
+		@Bean
+		public StringBuilder value() {
+			return new StringBuilder("second");
+		}
+
+	}
+
+	@Configuration
+	@Import({ MapperConfiguration.class, ConverterConfiguration.class })
+	static class OrderedConfiguration {
+
+	}
+
+	@Configuration
+	static class MapperConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		public StringBuilder mapper() {
+			return new StringBuilder();
+		}
+
+	}
+
+	@Configuration
+	@ConditionalOnBean(StringBuilder.class)
+	static class ConverterConfiguration {
+
+		@Bean
+		public Runnable converter() {
+			return () -> {
+			};
+		}
+
+	}
+
+	@Configuration
+	static class GenericConfiguration {
+
+		static final AtomicInteger created = new AtomicInteger();
+
+		@Bean
+		public List<String> strings() {
+			created.incrementAndGet();
+			return Collections.singletonList("foo");
+		}
+
+	}
+
+}
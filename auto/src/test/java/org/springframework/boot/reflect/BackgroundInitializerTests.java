@@ -0,0 +1,168 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.reflect;
+
+import java.util.Arrays;
+
+import javax.annotation.PostConstruct;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.support.GenericApplicationContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class BackgroundInitializerTests {
+
+	private GenericApplicationContext context = new GenericApplicationContext();
+
+	@After
+	public void close() {
+		this.context.close();
+	}
+
+	@Test
+	public void plainBeanDeferred() throws Exception {
+		assertThat(defer("plain", new RootBeanDefinition(Plain.class))).isTrue();
+	}
+
+	@Test
+	public void initializingBeanEager() throws Exception {
+		assertThat(defer("migration", new RootBeanDefinition(Migration.class)))
+				.isFalse();
+	}
+
+	@Test
+	public void postConstructEager() throws Exception {
+		assertThat(defer("annotated", new RootBeanDefinition(Annotated.class)))
+				.isFalse();
+	}
+
+	@Test
+	public void initMethodEager() throws Exception {
+		RootBeanDefinition definition = new RootBeanDefinition(Plain.class);
+		definition.setInitMethodName("toString");
+		assertThat(defer("plain", definition)).isFalse();
+	}
+
+	@Test
+	public void listenerEager() throws Exception {
+		assertThat(defer("listener", new RootBeanDefinition(Listener.class)))
+				.isFalse();
+	}
+
+	@Test
+	public void eagerByName() throws Exception {
+		this.context.getEnvironment().getSystemProperties()
+				.put(BackgroundInitializer.EAGER, "plain");
+		try {
+			assertThat(defer("plain", new RootBeanDefinition(Plain.class))).isFalse();
+		}
+		finally {
+			this.context.getEnvironment().getSystemProperties()
+					.remove(BackgroundInitializer.EAGER);
+		}
+	}
+
+	@Test
+	public void lifecycleStartedWhenCreatedLate() throws Exception {
+		RootBeanDefinition definition = new RootBeanDefinition(Object.class);
+		definition.setInstanceSupplier(Service::new);
+		assertThat(defer("service", definition)).isTrue();
+		this.context.refresh();
+		this.context.publishEvent(new ApplicationReadyEvent(new SpringApplication(),
+				new String[0], this.context));
+		long timeout = System.currentTimeMillis() + 10000;
+		while (!this.context.getBeanFactory().containsSingleton("service")
+				&& System.currentTimeMillis() < timeout) {
+			Thread.sleep(10);
+		}
+		Service service = this.context.getBean(Service.class);
+		while (!service.isRunning() && System.currentTimeMillis() < timeout) {
+			Thread.sleep(10);
+		}
+		assertThat(service.isRunning()).isTrue();
+	}
+
+	private boolean defer(String name, RootBeanDefinition definition) {
+		this.context.registerBeanDefinition(name, definition);
+		new BackgroundInitializer(this.context)
+				.defer(this.context.getBeanFactory(), Arrays.asList(name));
+		return this.context.getBeanDefinition(name).isLazyInit();
+	}
+
+	static class Plain {
+
+	}
+
+	static class Migration implements InitializingBean {
+
+		@Override
+		public void afterPropertiesSet() {
+		}
+
+	}
+
+	static class Annotated {
+
+		@PostConstruct
+		public void init() {
+		}
+
+	}
+
+	static class Listener implements ApplicationListener<ApplicationEvent> {
+
+		@Override
+		public void onApplicationEvent(ApplicationEvent event) {
+		}
+
+	}
+
+	static class Service implements SmartLifecycle {
+
+		private volatile boolean running;
+
+		@Override
+		public void start() {
+			this.running = true;
+		}
+
+		@Override
+		public void stop() {
+			this.running = false;
+		}
+
+		@Override
+		public boolean isRunning() {
+			return this.running;
+		}
+
+	}
+
+}
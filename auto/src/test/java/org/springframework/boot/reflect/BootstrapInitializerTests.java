@@ -0,0 +1,139 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.reflect;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.springframework.context.annotation.AnnotationConfigUtils;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.type.classreading.SimpleMetadataReaderFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class BootstrapInitializerTests {
+
+	private static final String SOURCES = "spring.cloud.bootstrap.sources";
+
+	private GenericApplicationContext functional = new GenericApplicationContext();
+
+	private GenericApplicationContext annotated = new GenericApplicationContext();
+
+	@After
+	public void close() {
+		this.functional.close();
+		this.annotated.close();
+	}
+
+	@Test
+	public void candidatesSortedByOrder() throws Exception {
+		this.functional.getEnvironment().getPropertySources()
+				.addFirst(sources(Plain.class, First.class, Second.class));
+		assertThat(BootstrapInitializer.candidates(getClass().getClassLoader(),
+				this.functional.getEnvironment(), new SimpleMetadataReaderFactory()))
+						.containsExactly(Second.class.getName(), First.class.getName(),
+								Plain.class.getName());
+	}
+
+	@Test
+	public void sameBeansAsConfigurationClasses() throws Exception {
+		AnnotationConfigUtils.registerAnnotationConfigProcessors(this.annotated);
+		this.annotated.registerBean(Imports.class);
+		this.annotated.refresh();
+		AnnotationConfigUtils.registerAnnotationConfigProcessors(this.functional);
+		this.functional.getEnvironment().getPropertySources()
+				.addFirst(sources(First.class, Second.class));
+		new BootstrapInitializer().initialize(this.functional);
+		this.functional.refresh();
+		for (Class<?> type : Arrays.asList(First.class, Second.class)) {
+			assertThat(this.annotated.containsBeanDefinition(type.getName())).isTrue();
+			assertThat(this.functional.containsBeanDefinition(type.getName())).isTrue();
+		}
+		assertThat(this.functional.getBeansOfType(StringBuilder.class))
+				.containsOnlyKeys(this.annotated.getBeansOfType(StringBuilder.class)
+						.keySet().toArray(new String[0]));
+		assertThat(this.functional.getBean("second", StringBuilder.class))
+				.hasToString("second");
+		List<String> names = Arrays.asList(this.functional.getBeanDefinitionNames());
+		assertThat(names.indexOf(Second.class.getName()))
+				.isLessThan(names.indexOf(First.class.getName()));
+		assertThat(this.annotated.containsBeanDefinition(
+				AnnotationConfigUtils.CONFIGURATION_ANNOTATION_PROCESSOR_BEAN_NAME))
+						.isTrue();
+		assertThat(this.functional.containsBeanDefinition(
+				AnnotationConfigUtils.CONFIGURATION_ANNOTATION_PROCESSOR_BEAN_NAME))
+						.isFalse();
+	}
+
+	private MapPropertySource sources(Class<?>... types) {
+		StringBuilder builder = new StringBuilder();
+		for (Class<?> type : types) {
+			if (builder.length() > 0) {
+				builder.append(",");
+			}
+			builder.append(type.getName());
+		}
+		return new MapPropertySource("bootstrap",
+				Collections.singletonMap(SOURCES, builder.toString()));
+	}
+
+	@Configuration
+	@Import({ Second.class, First.class })
+	static class Imports {
+
+	}
+
+	@Configuration
+	@Order(2)
+	static class First {
+
+		@Bean
+		public StringBuilder first() {
+			return new StringBuilder("first");
+		}
+
+	}
+
+	@Configuration
+	@Order(1)
+	static class Second {
+
+		@Bean
+		public StringBuilder second() {
+			return new StringBuilder("second");
+		}
+
+	}
+
+	@Configuration
+	static class Plain {
+
+	}
+
+}
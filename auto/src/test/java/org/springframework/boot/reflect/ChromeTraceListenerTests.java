@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.reflect;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class ChromeTraceListenerTests {
+
+	private ChromeTraceListener listener = new ChromeTraceListener(
+			new File("target/test-trace.json"), new GenericApplicationContext());
+
+	@Test
+	public void spansOnThreads() throws Exception {
+		listener.registered("com.example.Foo", 1000000, 2000);
+		Thread thread = new Thread(
+				() -> listener.evaluated("com.example.Bar", "Condition", 1005000, 3000),
+				"worker");
+		thread.start();
+		thread.join();
+		@SuppressWarnings("unchecked")
+		List<Map<String, Object>> events = (List<Map<String, Object>>) listener.trace()
+				.get("traceEvents");
+		assertThat(events).hasSize(4);
+		assertThat(events).filteredOn("ph", "M").extracting("args")
+				.extracting("name").contains("worker",
+						Thread.currentThread().getName());
+		Map<String, Object> bar = events.get(3);
+		assertThat(bar.get("name")).isEqualTo("com.example.Bar");
+		assertThat(bar.get("ts")).isEqualTo(5L);
+		assertThat(bar.get("dur")).isEqualTo(3L);
+		assertThat(bar.get("tid")).isEqualTo(thread.getId());
+	}
+
+	@Test
+	public void fileNamedWithContextId() throws Exception {
+		assertThat(listener.file("bootstrap"))
+				.isEqualTo(new File("target/test-trace-bootstrap.json"));
+		ChromeTraceListener plain = new ChromeTraceListener(new File("trace"),
+				new GenericApplicationContext());
+		assertThat(plain.file("application:8080"))
+				.isEqualTo(new File("trace-application_8080"));
+	}
+
+	@Test
+	public void startingOnlyInItsOwnContext() throws Exception {
+		GenericApplicationContext bootstrap = context("bootstrap");
+		GenericApplicationContext application = context("application");
+		new ChromeTraceListener.Starting(1000000, 2000).initialize(application);
+		assertThat(events(bootstrap)).isEmpty();
+		assertThat(events(application)).filteredOn("ph", "X").extracting("name")
+				.containsExactly(AutoListener.class.getName());
+	}
+
+	private GenericApplicationContext context(String id) {
+		GenericApplicationContext context = new GenericApplicationContext();
+		context.setId(id);
+		context.setEnvironment(
+				new MockEnvironment().withProperty(ChromeTraceListener.ENABLED, "true"));
+		ChromeTraceListener.install(context);
+		return context;
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Map<String, Object>> events(GenericApplicationContext context) {
+		ChromeTraceListener listener = (ChromeTraceListener) context
+				.getApplicationListeners().iterator().next();
+		return (List<Map<String, Object>>) listener.trace().get("traceEvents");
+	}
+
+}
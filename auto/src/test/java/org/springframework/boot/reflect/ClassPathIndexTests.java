@@ -0,0 +1,142 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.reflect;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class ClassPathIndexTests {
+
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	@Test
+	public void scanned() throws Exception {
+		File app = temp.newFolder("app");
+		touch(app, "com/example/Foo.class");
+		ClassPathIndex index = ClassPathIndex.load(loader(app));
+		assertThat(index.isPresent("com.example.Foo")).isTrue();
+		assertThat(index.isPresent("com.example.Bar")).isFalse();
+		assertThat(index.isPresent("java.lang.String")).isTrue();
+	}
+
+	@Test
+	public void generated() throws Exception {
+		File app = temp.newFolder("app");
+		touch(app, "com/example/Foo.class");
+		ClassPathIndex.generate(loader(app), app);
+		// Only in the generated file, so it must have been used
+		append(app, "com.example.Generated");
+		ClassPathIndex index = ClassPathIndex.load(loader(app));
+		assertThat(index.isPresent("com.example.Generated")).isTrue();
+		assertThat(index.isPresent("com.example.Foo")).isTrue();
+		assertThat(index.isPresent("com.example.Bar")).isFalse();
+	}
+
+	@Test
+	public void classAddedToDirectoryAfterGenerating() throws Exception {
+		File app = temp.newFolder("app");
+		ClassPathIndex.generate(loader(app), app);
+		touch(app, "com/example/Foo.class");
+		ClassPathIndex index = ClassPathIndex.load(loader(app));
+		assertThat(index.isPresent("com.example.Foo")).isTrue();
+	}
+
+	@Test
+	public void generatedForDifferentClasspath() throws Exception {
+		File app = temp.newFolder("app");
+		touch(app, "com/example/Foo.class");
+		ClassPathIndex.generate(loader(app), app);
+		// A jar that was not there when the file was generated (e.g. test scope)
+		File lib = temp.newFolder("lib");
+		touch(lib, "com/example/Bar.class");
+		ClassPathIndex index = ClassPathIndex.load(loader(app, lib));
+		assertThat(index.isPresent("com.example.Foo")).isTrue();
+		assertThat(index.isPresent("com.example.Bar")).isTrue();
+	}
+
+	@Test
+	public void shadowedByDependency() throws Exception {
+		File dependency = temp.newFolder("dependency");
+		write(dependency, ClassPathIndex.FINGERPRINT + " dependency.jar:1234",
+				"com.example.Other");
+		File app = temp.newFolder("app");
+		touch(app, "com/example/Foo.class");
+		ClassPathIndex.generate(loader(dependency, app), app);
+		ClassPathIndex index = ClassPathIndex.load(loader(dependency, app));
+		assertThat(index.isPresent("com.example.Foo")).isTrue();
+		assertThat(index.isPresent("com.example.Other")).isFalse();
+	}
+
+	@Test
+	public void unknownClassLoaderOnlyTrustsHits() throws Exception {
+		File app = temp.newFolder("app");
+		write(app, ClassPathIndex.FINGERPRINT + " app/", "com.example.Generated");
+		// A class loader that the index cannot read (e.g. for nested jars)
+		ClassLoader loader = new ClassLoader(new URLClassLoader(
+				new URL[] { app.toURI().toURL() }, getClass().getClassLoader())) {
+		};
+		ClassPathIndex index = ClassPathIndex.load(loader);
+		assertThat(index.isPresent("com.example.Generated")).isTrue();
+		// Not in the file, but the class loader can find it
+		assertThat(index.isPresent(getClass().getName())).isTrue();
+		assertThat(index.isPresent("com.example.Bar")).isFalse();
+	}
+
+	private ClassLoader loader(File... roots) throws Exception {
+		URL[] urls = new URL[roots.length];
+		for (int i = 0; i < roots.length; i++) {
+			urls[i] = roots[i].toURI().toURL();
+		}
+		// No parent, so only the roots are indexed
+		return new URLClassLoader(urls, null);
+	}
+
+	private void touch(File root, String path) throws IOException {
+		File file = new File(root, path);
+		file.getParentFile().mkdirs();
+		file.createNewFile();
+	}
+
+	private void write(File root, String... lines) throws IOException {
+		File file = new File(root, ClassPathIndex.LOCATION);
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+	}
+
+	private void append(File root, String line) throws IOException {
+		File file = new File(root, ClassPathIndex.LOCATION);
+		Files.write(file.toPath(), (line + "\n").getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.APPEND);
+	}
+
+}
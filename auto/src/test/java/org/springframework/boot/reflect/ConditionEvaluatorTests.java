@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.reflect;
+
+import org.junit.Test;
+
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.type.StandardMethodMetadata;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.ReflectionUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class ConditionEvaluatorTests {
+
+	private DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+
+	private ConditionEvaluator evaluator = new ConditionEvaluator(beanFactory,
+			new MockEnvironment(), new DefaultResourceLoader(), null, null);
+
+	@Test
+	public void overloadedMethodsCachedSeparately() throws Exception {
+		assertThat(evaluator.shouldSkip(metadata(String.class))).isFalse();
+		assertThat(evaluator.shouldSkip(metadata(Integer.class))).isTrue();
+		assertThat(evaluator.shouldSkip(metadata(String.class))).isFalse();
+	}
+
+	@Test
+	public void failureReportsElement() throws Exception {
+		StandardMethodMetadata metadata = new StandardMethodMetadata(
+				ReflectionUtils.findMethod(Overloads.class, "value", String.class)) {
+
+			@Override
+			public MultiValueMap<String, Object> getAllAnnotationAttributes(
+					String annotationName, boolean classValuesAsString) {
+				if (annotationName.equals(ConditionalOnClass.class.getName())) {
+					throw new IllegalArgumentException("Planned");
+				}
+				return super.getAllAnnotationAttributes(annotationName,
+						classValuesAsString);
+			}
+
+		};
+		assertThatExceptionOfType(IllegalStateException.class)
+				.isThrownBy(() -> evaluator.shouldSkip(metadata))
+				.withMessageContaining(Overloads.class.getName() + "#value")
+				.withCauseInstanceOf(IllegalArgumentException.class);
+	}
+
+	private StandardMethodMetadata metadata(Class<?> type) {
+		return new StandardMethodMetadata(
+				ReflectionUtils.findMethod(Overloads.class, "value", type));
+	}
+
+	static class Overloads {
+
+		@ConditionalOnClass(name = "java.lang.String")
+		public StringBuilder value(String value) {
+			return new StringBuilder(value);
+		}
+
+		@ConditionalOnClass(name = "com.example.Missing")
+		public StringBuilder value(Integer value) {
+			return new StringBuilder().append(value);
+		}
+
+	}
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.reflect;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.support.GenericApplicationContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class ContextTemplateTests {
+
+	@Test
+	public void independentContexts() throws Exception {
+		ContextTemplate template = ContextTemplate.of(TestInitializer.class);
+		try (GenericApplicationContext first = template.create();
+				GenericApplicationContext second = template
+						.create(Collections.singletonMap("tenant", "second"))) {
+			assertThat(first.getBeanDefinitionNames())
+					.containsExactlyInAnyOrder(second.getBeanDefinitionNames());
+			first.refresh();
+			second.refresh();
+			assertThat(first.getBean("foo")).isNotSameAs(second.getBean("foo"));
+			assertThat(first.getEnvironment().getProperty("tenant")).isNull();
+			assertThat(second.getEnvironment().getProperty("tenant"))
+					.isEqualTo("second");
+		}
+	}
+
+	@Test
+	public void unplannedSupplierRejected() throws Exception {
+		assertThatIllegalStateException()
+				.isThrownBy(() -> ContextTemplate.of(RegistrarInitializer.class))
+				.withMessageContaining("bar");
+	}
+
+	static class TestInitializer
+			implements ApplicationContextInitializer<GenericApplicationContext> {
+
+		@Override
+		public void initialize(GenericApplicationContext context) {
+			context.registerBean("foo", StringBuilder.class, StringBuilder::new);
+		}
+
+	}
+
+	static class RegistrarInitializer
+			implements ApplicationContextInitializer<GenericApplicationContext> {
+
+		@Override
+		public void initialize(GenericApplicationContext context) {
+			context.addBeanFactoryPostProcessor(new SupplierRegistrar());
+		}
+
+	}
+
+	static class SupplierRegistrar implements BeanDefinitionRegistryPostProcessor {
+
+		@Override
+		public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry)
+				throws BeansException {
+			RootBeanDefinition definition = new RootBeanDefinition(StringBuilder.class);
+			definition.setInstanceSupplier(StringBuilder::new);
+			registry.registerBeanDefinition("bar", definition);
+		}
+
+		@Override
+		public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory)
+				throws BeansException {
+		}
+
+	}
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.reflect;
+
+import org.junit.Test;
+
+import org.springframework.boot.reflect.CreationMetrics.Histogram;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class CreationMetricsTests {
+
+	private CreationMetrics metrics = new CreationMetrics();
+
+	@Test
+	public void perBeanAndConfiguration() throws Exception {
+		metrics.supplied("com.example.Config", 0, 100);
+		metrics.supplied("com.example.Config#foo", 0, 1000);
+		metrics.supplied("com.example.Config#foo", 0, 3000);
+		Histogram foo = metrics.getBeans().get("com.example.Config#foo");
+		assertThat(foo.getBean()).isEqualTo("foo");
+		assertThat(foo.getCount()).isEqualTo(2);
+		assertThat(foo.getTotalNanos()).isEqualTo(4000);
+		assertThat(foo.getMaxNanos()).isEqualTo(3000);
+		assertThat(metrics.getConfigurations().get("com.example.Config").getCount())
+				.isEqualTo(3);
+	}
+
+	@Test
+	public void percentiles() throws Exception {
+		Histogram histogram = new Histogram("foo", "com.example.Config");
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i * 1000000L);
+		}
+		// Within the precision of the histogram
+		assertThat(histogram.getValueAtPercentile(0.5)).isBetween(50000000L, 53125000L);
+		assertThat(histogram.getValueAtPercentile(0.99)).isBetween(99000000L,
+				100000000L);
+		assertThat(histogram.getValueAtPercentile(1)).isEqualTo(100000000L);
+	}
+
+	@Test
+	public void bucketBoundaries() throws Exception {
+		for (long value : new long[] { 0, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE }) {
+			long highest = Histogram.highest(Histogram.index(value));
+			assertThat(highest).isGreaterThanOrEqualTo(value);
+			assertThat(Histogram.index(highest)).isEqualTo(Histogram.index(value));
+		}
+	}
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.reflect;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Test;
+
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ReflectionUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class InjectionPlanTests {
+
+	private DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+
+	@Test
+	public void requiredDependencyMissing() throws Exception {
+		assertThatExceptionOfType(NoSuchBeanDefinitionException.class)
+				.isThrownBy(() -> create("required", String.class));
+	}
+
+	@Test
+	public void optionalDependencyMissing() throws Exception {
+		assertThat(create("optional", Optional.class)).hasToString("none");
+	}
+
+	@Test
+	public void nullableDependencyMissing() throws Exception {
+		assertThat(create("nullable", String.class)).hasToString("none");
+	}
+
+	@Test
+	public void providerDependencyMissing() throws Exception {
+		assertThat(create("provider", ObjectProvider.class)).hasToString("none");
+	}
+
+	@Test
+	public void emptyList() throws Exception {
+		assertThat(create("list", List.class)).hasToString("0");
+	}
+
+	@Test
+	public void inheritedGenericMethod() throws Exception {
+		this.beanFactory.registerSingleton("owner", new StringOwner());
+		this.beanFactory.registerSingleton("value", "foo");
+		this.beanFactory.registerSingleton("number", 123);
+		Method method = ReflectionUtils.findMethod(StringOwner.class, "generic",
+				Object.class);
+		Object bean = InjectionPlan
+				.of(method, StringOwner.class, "generic", "owner")
+				.bind(this.beanFactory).get();
+		assertThat(bean).hasToString("foo");
+	}
+
+	@Test
+	public void varargsMethod() throws Exception {
+		this.beanFactory.registerSingleton("foo", "foo");
+		this.beanFactory.registerSingleton("bar", "bar");
+		assertThat(create("varargs", String[].class)).hasToString("foobar");
+	}
+
+	@Test
+	public void varargsConstructor() throws Exception {
+		this.beanFactory.registerSingleton("foo", "foo");
+		this.beanFactory.registerSingleton("bar", "bar");
+		Object bean = InjectionPlan
+				.of(Varargs.class.getDeclaredConstructor(String[].class), "varargs")
+				.bind(this.beanFactory).get();
+		assertThat(bean).hasToString("foobar");
+	}
+
+	private Object create(String name, Class<?> type) {
+		Method method = ReflectionUtils.findMethod(Beans.class, name, type);
+		return InjectionPlan.of(method, Beans.class, name, null)
+				.bind(this.beanFactory).get();
+	}
+
+	static class Beans {
+
+		static StringBuilder required(String value) {
+			return new StringBuilder(value);
+		}
+
+		static StringBuilder optional(Optional<String> value) {
+			return new StringBuilder(value.orElse("none"));
+		}
+
+		static StringBuilder nullable(@Nullable String value) {
+			return new StringBuilder(value == null ? "none" : value);
+		}
+
+		static StringBuilder provider(ObjectProvider<String> value) {
+			return new StringBuilder(value.getIfAvailable(() -> "none"));
+		}
+
+		static StringBuilder list(List<String> values) {
+			return new StringBuilder().append(values.size());
+		}
+
+		static StringBuilder varargs(String... values) {
+			return new StringBuilder(String.join("", values));
+		}
+
+	}
+
+	static class Varargs {
+
+		private final String value;
+
+		Varargs(String... values) {
+			this.value = String.join("", values);
+		}
+
+		@Override
+		public String toString() {
+			return this.value;
+		}
+
+	}
+
+	static class Base<T> {
+
+		public StringBuilder generic(T value) {
+			return new StringBuilder(value.toString());
+		}
+
+	}
+
+	static class StringOwner extends Base<String> {
+
+	}
+
+}
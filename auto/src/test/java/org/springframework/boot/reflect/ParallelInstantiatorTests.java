@@ -0,0 +1,208 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.reflect;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.util.ReflectionUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class ParallelInstantiatorTests {
+
+	private GenericApplicationContext context = new IndexedBeanFactory.Generic();
+
+	@After
+	public void close() {
+		context.close();
+		TestConfiguration.threads.clear();
+	}
+
+	@Test
+	public void independentBeanOnWorker() throws Exception {
+		TestPropertyValues.of(ParallelInstantiator.THREADS + "=2").applyTo(context);
+		new AutoRegistrar(context, context.getDefaultListableBeanFactory(),
+				context.getEnvironment(), context).register(TestConfiguration.class);
+		ParallelInstantiator.install(context);
+		context.refresh();
+		// The first bean waits until the second one has started, so it has to be
+		// created on a worker
+		assertThat(TestConfiguration.threads.get("foo"))
+				.startsWith("spring-functional-instantiation-");
+		assertThat(context.getBean("bar", StringBuilder.class).toString())
+				.isEqualTo("foo");
+		// Looks up a bean that might not exist yet
+		assertThat(context.getBean("spam", StringBuilder.class).toString())
+				.isEqualTo("eggs");
+	}
+
+	@Test(timeout = 10000)
+	public void lookupTheIndexCannotAnswer() throws Exception {
+		TestPropertyValues.of(ParallelInstantiator.THREADS + "=2").applyTo(context);
+		new AutoRegistrar(context, context.getDefaultListableBeanFactory(),
+				context.getEnvironment(), context).register(UnindexedConfiguration.class);
+		// A bean that the index cannot work out the type of
+		RootBeanDefinition unknown = new RootBeanDefinition(RawFactoryBean.class);
+		unknown.setLazyInit(true);
+		context.registerBeanDefinition("unknown", unknown);
+		assertThat(context.getDefaultListableBeanFactory()).isInstanceOf(
+				IndexedBeanFactory.class);
+		ParallelInstantiator.install(context);
+		UnindexedConfiguration.beanFactory = context.getDefaultListableBeanFactory();
+		// Without the index the worker would need the lock held by the main thread,
+		// while the main thread waits for it
+		context.refresh();
+		assertThat(context.getBean("runner", StringBuilder.class).toString())
+				.isEqualTo("runner");
+	}
+
+	@Test
+	public void beansWithDestroyCallbacksOnMainThread() throws Exception {
+		assertThat(destroyCallback("plain", null)).isFalse();
+		assertThat(destroyCallback("closeable", null)).isTrue();
+		assertThat(destroyCallback("plain", "stop")).isTrue();
+		assertThat(destroyCallback("plain", AbstractBeanDefinition.INFER_METHOD))
+				.isFalse();
+		assertThat(destroyCallback("shutdown", AbstractBeanDefinition.INFER_METHOD))
+				.isTrue();
+	}
+
+	private boolean destroyCallback(String name, String destroyMethod) {
+		Method method = ReflectionUtils.findMethod(DestroyConfiguration.class, name);
+		RootBeanDefinition definition = new RootBeanDefinition();
+		definition.setDestroyMethodName(destroyMethod);
+		return ParallelInstantiator.hasDestroyCallback(definition, InjectionPlan
+				.of(method, DestroyConfiguration.class, name, "destroyConfiguration"));
+	}
+
+	static class DestroyConfiguration {
+
+		public StringBuilder plain() {
+			return new StringBuilder();
+		}
+
+		public AutoCloseable closeable() {
+			return () -> {
+			};
+		}
+
+		public Shutdown shutdown() {
+			return new Shutdown();
+		}
+
+	}
+
+	static class Shutdown {
+
+		public void shutdown() {
+		}
+
+	}
+
+	@Configuration
+	static class UnindexedConfiguration {
+
+		static volatile BeanFactory beanFactory;
+
+		@Bean
+		public static StringBuilder runner(ObjectProvider<Runnable> runnable)
+				throws InterruptedException {
+			// Wait for the main thread to get to this bean
+			long timeout = System.currentTimeMillis() + 5000;
+			while (!((IndexedBeanFactory) beanFactory).isCurrentlyInCreation("runner")
+					&& System.currentTimeMillis() < timeout) {
+				Thread.sleep(10);
+			}
+			Thread.sleep(100);
+			runnable.getIfAvailable();
+			return new StringBuilder("runner");
+		}
+
+	}
+
+	@SuppressWarnings("rawtypes")
+	static class RawFactoryBean implements FactoryBean {
+
+		@Override
+		public Object getObject() {
+			return "unknown";
+		}
+
+		@Override
+		public Class<?> getObjectType() {
+			return null;
+		}
+
+	}
+
+	@Configuration
+	static class TestConfiguration {
+
+		static final Map<String, String> threads = new ConcurrentHashMap<>();
+
+		private static final CountDownLatch latch = new CountDownLatch(1);
+
+		@Bean
+		public Integer first() throws InterruptedException {
+			latch.await(5, TimeUnit.SECONDS);
+			return 1;
+		}
+
+		@Bean
+		public StringBuffer foo() {
+			threads.put("foo", Thread.currentThread().getName());
+			latch.countDown();
+			return new StringBuffer("foo");
+		}
+
+		@Bean
+		public StringBuilder bar(StringBuffer foo) {
+			return new StringBuilder(foo);
+		}
+
+		@Bean
+		public StringBuilder spam(BeanFactory beanFactory) {
+			return new StringBuilder(beanFactory.getBean("eggs", String.class));
+		}
+
+		@Bean
+		public String eggs() {
+			return "eggs";
+		}
+
+	}
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.reflect;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.boot.autoconfigure.info.ProjectInfoAutoConfiguration;
+import org.springframework.boot.reflect.RegistrationSnapshot.Kind;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class RegistrationSnapshotTests {
+
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	@Test
+	public void roundTrip() throws Exception {
+		File file = new File(temp.getRoot(), "test.snapshot");
+		RegistrationSnapshot snapshot = new RegistrationSnapshot("foo");
+		snapshot.add(Kind.CONFIGURATION, "com.example.Foo", null, null);
+		snapshot.add(Kind.BEAN, "com.example.Foo", "bar", "com.example.Foo");
+		snapshot.setCandidates(new String[] { "com.example.Foo" });
+		snapshot.write(file);
+		RegistrationSnapshot result = RegistrationSnapshot.read(file, "foo");
+		assertThat(result.getEntries()).hasSize(2);
+		assertThat(result.getEntries().get(0).getName()).isNull();
+		assertThat(result.getEntries().get(1).getKind()).isEqualTo(Kind.BEAN);
+		assertThat(result.getEntries().get(1).getName()).isEqualTo("bar");
+		assertThat(result.getEntries().get(0).getSource()).isNull();
+		assertThat(result.getEntries().get(1).getSource())
+				.isEqualTo("com.example.Foo");
+		assertThat(result.getCandidates()).containsExactly("com.example.Foo");
+	}
+
+	@Test
+	public void trainingWithReplayedSnapshot() throws Exception {
+		File file = new File(temp.getRoot(), "test.snapshot");
+		File exclusions = new File(temp.getRoot(), "test.exclusions");
+		// The first context records the snapshot and the second one replays it
+		for (int i = 0; i < 2; i++) {
+			GenericApplicationContext context = new IndexedBeanFactory.Generic();
+			TestPropertyValues.of(RegistrationSnapshot.ENABLED + "=true",
+					RegistrationSnapshot.FILE + "=" + file.getAbsolutePath(),
+					UsageRecorder.ENABLED + "=true",
+					UsageRecorder.FILE + "=" + exclusions.getAbsolutePath(),
+					AutoConfigurations.INCLUDE + "="
+							+ ProjectInfoAutoConfiguration.class.getName())
+					.applyTo(context);
+			context.addBeanFactoryPostProcessor(new AutoConfigurations(context));
+			context.refresh();
+			context.close();
+			assertThat(file).exists();
+			assertThat(Files.readAllLines(exclusions.toPath(), StandardCharsets.UTF_8))
+					.contains(ProjectInfoAutoConfiguration.class.getName());
+		}
+	}
+
+	@Test
+	public void staleFingerprint() throws Exception {
+		File file = new File(temp.getRoot(), "test.snapshot");
+		new RegistrationSnapshot("foo").write(file);
+		assertThat(RegistrationSnapshot.read(file, "bar")).isNull();
+	}
+
+	@Test
+	public void fingerprintDependsOnEnvironment() throws Exception {
+		ClassLoader classLoader = getClass().getClassLoader();
+		MockEnvironment environment = new MockEnvironment();
+		String fingerprint = RegistrationSnapshot.fingerprint(classLoader, environment);
+		assertThat(RegistrationSnapshot.fingerprint(classLoader, environment))
+				.isEqualTo(fingerprint);
+		environment.setProperty("spring.jmx.enabled", "false");
+		assertThat(RegistrationSnapshot.fingerprint(classLoader, environment))
+				.isNotEqualTo(fingerprint);
+	}
+
+	@Test
+	public void fingerprintDependsOnNestedFiles() throws Exception {
+		File classes = temp.newFolder("classes");
+		File file = new File(classes, "com/example/Foo.class");
+		file.getParentFile().mkdirs();
+		file.createNewFile();
+		ClassLoader classLoader = new URLClassLoader(
+				new URL[] { classes.toURI().toURL() }, null);
+		MockEnvironment environment = new MockEnvironment();
+		String fingerprint = RegistrationSnapshot.fingerprint(classLoader, environment);
+		// Adding a class does not change the directory it is in
+		new File(classes, "com/example/Bar.class").createNewFile();
+		assertThat(RegistrationSnapshot.fingerprint(classLoader, environment))
+				.isNotEqualTo(fingerprint);
+	}
+
+	@Test
+	public void fingerprintDependsOnCloudPlatform() throws Exception {
+		ClassLoader classLoader = getClass().getClassLoader();
+		Map<String, Object> variables = new HashMap<>();
+		StandardEnvironment environment = new StandardEnvironment();
+		environment.getPropertySources().replace(
+				StandardEnvironment.SYSTEM_ENVIRONMENT_PROPERTY_SOURCE_NAME,
+				new MapPropertySource(
+						StandardEnvironment.SYSTEM_ENVIRONMENT_PROPERTY_SOURCE_NAME,
+						variables));
+		String fingerprint = RegistrationSnapshot.fingerprint(classLoader, environment);
+		variables.put("TERM", "xterm");
+		assertThat(RegistrationSnapshot.fingerprint(classLoader, environment))
+				.isEqualTo(fingerprint);
+		variables.put("DYNO", "web.1");
+		assertThat(RegistrationSnapshot.fingerprint(classLoader, environment))
+				.isNotEqualTo(fingerprint);
+	}
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.reflect;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.junit.Test;
+
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class SharedCachesTests {
+
+	private ClassLoader classLoader = getClass().getClassLoader();
+
+	private MockEnvironment environment = new MockEnvironment();
+
+	@Test
+	public void sharedBetweenBeanFactories() throws Exception {
+		SharedCaches caches = SharedCaches.get(new DefaultListableBeanFactory(),
+				classLoader, environment);
+		assertThat(SharedCaches.get(new DefaultListableBeanFactory(), classLoader,
+				environment)).isSameAs(caches);
+	}
+
+	@Test
+	public void notSharedBetweenClassLoaders() throws Exception {
+		SharedCaches caches = SharedCaches.get(new DefaultListableBeanFactory(),
+				classLoader, environment);
+		try (URLClassLoader other = new URLClassLoader(new URL[0], classLoader)) {
+			assertThat(SharedCaches.get(new DefaultListableBeanFactory(), other,
+					environment)).isNotSameAs(caches);
+		}
+	}
+
+	@Test
+	public void disabled() throws Exception {
+		SharedCaches caches = SharedCaches.get(new DefaultListableBeanFactory(),
+				classLoader, environment);
+		environment.setProperty(SharedCaches.ENABLED, "false");
+		assertThat(SharedCaches.get(new DefaultListableBeanFactory(), classLoader,
+				environment)).isNotSameAs(caches);
+	}
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.reflect;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class StartupProfilerTests {
+
+	private StartupProfiler profiler = new StartupProfiler(new File("target/startup.json"));
+
+	@Test
+	public void slowestFirst() throws Exception {
+		profiler.evaluated("com.example.Foo", null, 0, 100);
+		profiler.registered("com.example.Foo", 0, 100);
+		profiler.evaluated("com.example.Bar", null, 0, 50);
+		profiler.supplied("com.example.Bar", 0, 1000);
+		Map<String, Object> report = profiler.report();
+		assertThat(report.get("conditionNanos")).isEqualTo(150L);
+		@SuppressWarnings("unchecked")
+		List<Map<String, Object>> elements = (List<Map<String, Object>>) report
+				.get("elements");
+		assertThat(elements.get(0).get("name")).isEqualTo("com.example.Bar");
+		assertThat(elements.get(1).get("registrationNanos")).isEqualTo(100L);
+	}
+
+	@Test
+	public void skipped() throws Exception {
+		profiler.evaluated("com.example.Foo#foo", "com.example.OnFoo", 0, 100);
+		@SuppressWarnings("unchecked")
+		Map<String, Object> element = ((List<Map<String, Object>>) profiler.report()
+				.get("elements")).get(0);
+		assertThat(element.get("skipped")).isEqualTo(true);
+		assertThat(element.get("skippedBy")).isEqualTo("com.example.OnFoo");
+	}
+
+	@Test
+	public void json() throws Exception {
+		assertThat(StartupProfiler.json(Collections.singletonMap("a\"b",
+				Collections.singletonList(1L)))).isEqualTo("{\"a\\\"b\":[1]}");
+	}
+
+}
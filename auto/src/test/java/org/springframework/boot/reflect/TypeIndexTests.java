@@ -0,0 +1,207 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.reflect;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class TypeIndexTests {
+
+	private IndexedBeanFactory beanFactory = new IndexedBeanFactory();
+
+	@Test
+	public void supertypes() throws Exception {
+		beanFactory.registerBeanDefinition("list",
+				new RootBeanDefinition(ArrayList.class));
+		beanFactory.registerBeanDefinition("string",
+				new RootBeanDefinition(String.class));
+		assertThat(beanFactory.getTypeIndex().getBeanNamesForType(
+				ResolvableType.forClass(Collection.class), true))
+						.containsExactly("list");
+		assertThat(beanFactory.getBeanNamesForType(Object.class))
+				.containsExactly("list", "string");
+	}
+
+	@Test
+	public void generics() throws Exception {
+		beanFactory.registerBeanDefinition("strings",
+				new RootBeanDefinition(ArrayList.class));
+		beanFactory.getTypeIndex().add("strings",
+				ResolvableType.forClassWithGenerics(List.class, String.class));
+		assertThat(beanFactory.getBeanNamesForType(
+				ResolvableType.forClassWithGenerics(List.class, String.class)))
+						.containsExactly("strings");
+		assertThat(beanFactory.getBeanNamesForType(
+				ResolvableType.forClassWithGenerics(List.class, Integer.class)))
+						.isEmpty();
+	}
+
+	@Test
+	public void unknownFallsBack() throws Exception {
+		RootBeanDefinition definition = new RootBeanDefinition();
+		definition.setFactoryBeanName("factory");
+		definition.setFactoryMethodName("create");
+		beanFactory.registerBeanDefinition("foo", definition);
+		assertThat(beanFactory.getTypeIndex().getBeanNamesForType(
+				ResolvableType.forClass(Supplier.class), true)).isNull();
+	}
+
+	@Test
+	public void unknownOnlyForTypesItMightHave() throws Exception {
+		beanFactory.registerBeanDefinition("factory",
+				new RootBeanDefinition(NameFactory.class));
+		beanFactory.registerBeanDefinition("list",
+				new RootBeanDefinition(ArrayList.class));
+		RootBeanDefinition definition = new RootBeanDefinition();
+		definition.setFactoryBeanName("factory");
+		definition.setFactoryMethodName("create");
+		beanFactory.registerBeanDefinition("foo", definition);
+		assertThat(beanFactory.getTypeIndex().getBeanNamesForType(
+				ResolvableType.forClass(CharSequence.class), true)).isNull();
+		assertThat(beanFactory.getTypeIndex().getBeanNamesForType(
+				ResolvableType.forClass(Supplier.class), true)).isEmpty();
+		assertThat(beanFactory.getTypeIndex().getBeanNamesForType(
+				ResolvableType.forClass(List.class), true)).containsExactly("list");
+	}
+
+	@Test
+	public void registrationOrderKeptWhenCreated() throws Exception {
+		beanFactory.registerBeanDefinition("first",
+				new RootBeanDefinition(ArrayList.class));
+		beanFactory.registerBeanDefinition("second",
+				new RootBeanDefinition(LinkedList.class));
+		beanFactory.getBean("second");
+		beanFactory.getBean("first");
+		assertThat(beanFactory.getTypeIndex().getBeanNamesForType(
+				ResolvableType.forClass(Collection.class), true))
+						.containsExactly("first", "second");
+	}
+
+	@Test
+	public void factoryBeanMethod() throws Exception {
+		new AutoRegistrar(beanFactory, beanFactory, new MockEnvironment(),
+				new DefaultResourceLoader()).register(FactoryBeanConfiguration.class);
+		assertThat(beanFactory.getTypeIndex().getBeanNamesForType(
+				ResolvableType.forClass(StringBuilder.class), true))
+						.containsExactly("builder");
+		assertThat(beanFactory.getTypeIndex().getBeanNamesForType(
+				ResolvableType.forClass(FactoryBean.class), true))
+						.containsExactly("&builder");
+		assertThat(FactoryBeanConfiguration.created).isFalse();
+		assertThat(beanFactory.getBean("builder")).isInstanceOf(StringBuilder.class);
+		assertThat(beanFactory.getBeanNamesForType(StringBuilder.class))
+				.containsExactly("builder");
+	}
+
+	@Test
+	public void objectFactoryBeanUnknown() throws Exception {
+		beanFactory.registerBeanDefinition("proxy",
+				new RootBeanDefinition(ObjectFactoryBean.class));
+		assertThat(beanFactory.getTypeIndex().getBeanNamesForType(
+				ResolvableType.forClass(StringBuilder.class), true)).isNull();
+		assertThat(beanFactory.getBeanNamesForType(StringBuilder.class))
+				.containsExactly("proxy");
+	}
+
+	@Test
+	public void factoryBeanNotCreatedWithoutEagerInit() throws Exception {
+		RootBeanDefinition definition = new RootBeanDefinition(
+				BuilderFactoryBean.class);
+		definition.setLazyInit(true);
+		beanFactory.registerBeanDefinition("builder", definition);
+		assertThat(beanFactory.getBeanNamesForType(StringBuilder.class, true, false))
+				.isEmpty();
+		assertThat(beanFactory.getBeanNamesForType(StringBuilder.class, true, true))
+				.containsExactly("builder");
+	}
+
+	@Test
+	public void removed() throws Exception {
+		beanFactory.registerBeanDefinition("list",
+				new RootBeanDefinition(ArrayList.class));
+		beanFactory.removeBeanDefinition("list");
+		assertThat(beanFactory.getBeanNamesForType(List.class)).isEmpty();
+	}
+
+	@Configuration
+	static class FactoryBeanConfiguration {
+
+		static volatile boolean created;
+
+		@Bean
+		public BuilderFactoryBean builder() {
+			created = true;
+			return new BuilderFactoryBean();
+		}
+
+	}
+
+	static class NameFactory {
+
+		public String create() {
+			return "foo";
+		}
+
+	}
+
+	static class ObjectFactoryBean implements FactoryBean<Object> {
+
+		@Override
+		public Object getObject() {
+			return new StringBuilder("foo");
+		}
+
+		@Override
+		public Class<?> getObjectType() {
+			return StringBuilder.class;
+		}
+
+	}
+
+	static class BuilderFactoryBean implements FactoryBean<StringBuilder> {
+
+		@Override
+		public StringBuilder getObject() {
+			return new StringBuilder("foo");
+		}
+
+		@Override
+		public Class<?> getObjectType() {
+			return StringBuilder.class;
+		}
+
+	}
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.reflect;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.springframework.context.support.GenericApplicationContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class UsageRecorderTests {
+
+	private GenericApplicationContext context = new IndexedBeanFactory.Generic();
+
+	private IndexedBeanFactory beanFactory = (IndexedBeanFactory) context
+			.getDefaultListableBeanFactory();
+
+	@After
+	public void close() {
+		context.close();
+	}
+
+	@Test
+	public void unusedAutoConfiguration() throws Exception {
+		UsageRecorder recorder = new UsageRecorder(context,
+				new File("target/test.exclusions"),
+				new String[] { "com.example.Used", "com.example.Unused" });
+		beanFactory.setUsageRecorder(recorder);
+		context.registerBean("used", StringBuilder.class, StringBuilder::new,
+				bean -> bean.setAttribute(AutoRegistrar.SOURCE_ATTRIBUTE,
+						"com.example.Used"));
+		context.registerBean("unused", StringBuilder.class, StringBuilder::new,
+				bean -> bean.setAttribute(AutoRegistrar.SOURCE_ATTRIBUTE,
+						"com.example.Unused"));
+		context.registerBean("user", String.class,
+				() -> context.getBean("used").toString());
+		context.refresh();
+		assertThat(recorder.unused()).containsExactly("com.example.Unused");
+	}
+
+	@Test
+	public void lookupAfterStartup() throws Exception {
+		UsageRecorder recorder = new UsageRecorder(context,
+				new File("target/test.exclusions"),
+				new String[] { "com.example.Used" });
+		beanFactory.setUsageRecorder(recorder);
+		context.registerBean("used", StringBuilder.class, StringBuilder::new,
+				bean -> bean.setAttribute(AutoRegistrar.SOURCE_ATTRIBUTE,
+						"com.example.Used"));
+		context.refresh();
+		assertThat(recorder.unused()).containsExactly("com.example.Used");
+		context.getBean("used");
+		assertThat(recorder.unused()).isEmpty();
+	}
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflect.maven;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Generates an index of the autoconfigurations of a project (sorted candidates and the
+ * classes they require) in its output directory, so that it is packaged with the
+ * application and read at runtime instead of <code>spring.factories</code>. The index is
+ * computed by the <code>spring-boot-auto-reflect</code> library itself, running in a
+ * class loader with the runtime classpath of the project.
+ *
+ * @author Dave Syer
+ *
+ */
+@Mojo(name = "index", defaultPhase = LifecyclePhase.PROCESS_CLASSES, threadSafe = true, requiresDependencyResolution = ResolutionScope.RUNTIME)
+public class IndexMojo extends AbstractMojo {
+
+	private static final String GENERATOR = "org.springframework.boot.reflect.AutoConfigurationIndex";
+
+	@Parameter(defaultValue = "${project}", readonly = true, required = true)
+	private MavenProject project;
+
+	/**
+	 * The directory to write the index to.
+	 */
+	@Parameter(defaultValue = "${project.build.outputDirectory}", required = true)
+	private File outputDirectory;
+
+	/**
+	 * Skip the generation of the index.
+	 */
+	@Parameter(property = "spring.functional.index.skip", defaultValue = "false")
+	private boolean skip;
+
+	@Override
+	public void execute() throws MojoExecutionException {
+		if (this.skip) {
+			getLog().info("Skipping autoconfiguration index");
+			return;
+		}
+		ClassLoader previous = Thread.currentThread().getContextClassLoader();
+		try (URLClassLoader classLoader = new URLClassLoader(urls(),
+				ClassLoader.getSystemClassLoader().getParent())) {
+			Thread.currentThread().setContextClassLoader(classLoader);
+			Class<?> generator = Class.forName(GENERATOR, true, classLoader);
+			Method method = generator.getMethod("generate", ClassLoader.class,
+					File.class);
+			File file = (File) method.invoke(null, classLoader, this.outputDirectory);
+			getLog().info("Generated autoconfiguration index " + file);
+		}
+		catch (ClassNotFoundException e) {
+			throw new MojoExecutionException(
+					"Cannot generate index without spring-boot-auto-reflect on the classpath",
+					e);
+		}
+		catch (InvocationTargetException e) {
+			throw new MojoExecutionException("Cannot generate index",
+					e.getTargetException());
+		}
+		catch (Exception e) {
+			throw new MojoExecutionException("Cannot generate index", e);
+		}
+		finally {
+			Thread.currentThread().setContextClassLoader(previous);
+		}
+	}
+
+	private URL[] urls() throws MojoExecutionException {
+		try {
+			List<URL> urls = new ArrayList<>();
+			for (String element : this.project.getRuntimeClasspathElements()) {
+				urls.add(new File(element).toURI().toURL());
+			}
+			return urls.toArray(new URL[0]);
+		}
+		catch (DependencyResolutionRequiredException | MalformedURLException e) {
+			throw new MojoExecutionException("Cannot resolve the project classpath", e);
+		}
+	}
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.reflect.maven;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.project.MavenProject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class IndexMojoTests {
+
+	private static final String INDEX = "META-INF/spring-functional.index";
+
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	@Test
+	public void generatesIndex() throws Exception {
+		File output = this.temp.newFolder();
+		mojo(output, classpath()).execute();
+		List<String> lines = Files.readAllLines(new File(output, INDEX).toPath(),
+				StandardCharsets.ISO_8859_1);
+		assertThat(lines).anyMatch(line -> line.startsWith("candidates="));
+		assertThat(lines).noneMatch(line -> line.contains(".nested=")
+				|| line.contains(".imports="));
+		// Only the fixed header, no timestamp
+		assertThat(lines.stream().filter(line -> line.startsWith("#")))
+				.containsExactly("# Autoconfiguration index");
+		assertThat(new File(output, "META-INF/spring-functional.classes")).exists();
+	}
+
+	@Test
+	public void sameClasspathSameIndex() throws Exception {
+		File first = this.temp.newFolder();
+		File second = this.temp.newFolder();
+		mojo(first, classpath()).execute();
+		mojo(second, classpath()).execute();
+		assertThat(Files.readAllBytes(new File(first, INDEX).toPath()))
+				.isEqualTo(Files.readAllBytes(new File(second, INDEX).toPath()));
+	}
+
+	@Test
+	public void skip() throws Exception {
+		File output = this.temp.newFolder();
+		IndexMojo mojo = mojo(output, classpath());
+		set(mojo, "skip", true);
+		mojo.execute();
+		assertThat(new File(output, INDEX)).doesNotExist();
+	}
+
+	@Test
+	public void libraryMissing() throws Exception {
+		File output = this.temp.newFolder();
+		assertThatExceptionOfType(MojoExecutionException.class)
+				.isThrownBy(() -> mojo(output, Collections.emptyList()).execute())
+				.withMessageContaining("spring-boot-auto-reflect");
+	}
+
+	private IndexMojo mojo(File output, List<String> classpath) throws Exception {
+		IndexMojo mojo = new IndexMojo();
+		set(mojo, "project", new MavenProject() {
+			@Override
+			public List<String> getRuntimeClasspathElements() {
+				return classpath;
+			}
+		});
+		set(mojo, "outputDirectory", output);
+		return mojo;
+	}
+
+	private static List<String> classpath() {
+		// Surefire puts the real classpath in a manifest, and tells us about it here
+		String classpath = System.getProperty("surefire.test.class.path",
+				System.getProperty("java.class.path"));
+		return new ArrayList<>(
+				Arrays.asList(classpath.split(File.pathSeparator)));
+	}
+
+	private static void set(Object target, String name, Object value)
+			throws Exception {
+		Field field = target.getClass().getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(target, value);
+	}
+
+}
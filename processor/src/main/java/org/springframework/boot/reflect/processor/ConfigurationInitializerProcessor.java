@@ -0,0 +1,454 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflect.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.JavaFileObject;
+
+/**
+ * Annotation processor that generates an
+ * {@code ApplicationContextInitializer<GenericApplicationContext>} for each
+ * {@code @Configuration} class, registering the same beans as the reflective
+ * {@code AutoRegistrar} but with direct constructor and method calls. The generated
+ * class is named after the configuration class (with {@code $} replaced by {@code _})
+ * plus {@code Initializer}, and is picked up at runtime by {@code BeansInitializer} and
+ * {@code AutoListener}.
+ * <p>
+ * Configuration classes that need features the generated code does not support (e.g.
+ * {@code @Conditional} annotations, {@code @Import}, or injection points that cannot be
+ * expressed as a simple type lookup, like a {@code @Qualifier} or {@code @Value}) are
+ * left alone, and fall back to the reflective path at runtime. A required dependency
+ * that is missing fails as it would on the reflective path, and only a {@code @Nullable}
+ * parameter (or an {@code ObjectProvider}) is allowed to be missing.
+ *
+ * @author Dave Syer
+ *
+ */
+@SupportedAnnotationTypes("*")
+public class ConfigurationInitializerProcessor extends AbstractProcessor {
+
+	static final String CONFIGURATION = "org.springframework.context.annotation.Configuration";
+
+	static final String BEAN = "org.springframework.context.annotation.Bean";
+
+	static final String CONDITIONAL = "org.springframework.context.annotation.Conditional";
+
+	static final String IMPORT = "org.springframework.context.annotation.Import";
+
+	static final String ENABLE_CONFIGURATION_PROPERTIES = "org.springframework.boot.context.properties.EnableConfigurationProperties";
+
+	static final String OBJECT_PROVIDER = "org.springframework.beans.factory.ObjectProvider";
+
+	static final String AUTOWIRED = "org.springframework.beans.factory.annotation.Autowired";
+
+	static final String QUALIFIER = "org.springframework.beans.factory.annotation.Qualifier";
+
+	static final String VALUE = "org.springframework.beans.factory.annotation.Value";
+
+	static final String NAMED = "javax.inject.Named";
+
+	static final String INJECT_QUALIFIER = "javax.inject.Qualifier";
+
+	static final String SUFFIX = "Initializer";
+
+	private final Set<String> generated = new HashSet<>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations,
+			RoundEnvironment roundEnv) {
+		for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+			if (isAnnotated(type, CONFIGURATION)) {
+				process(type);
+			}
+		}
+		return false;
+	}
+
+	private void process(TypeElement type) {
+		if (!isSupported(type)) {
+			return;
+		}
+		for (TypeElement nested : nested(type)) {
+			process(nested);
+		}
+		String name = initializerName(type);
+		if (this.generated.add(name)) {
+			write(type, name);
+		}
+	}
+
+	private void write(TypeElement type, String name) {
+		try {
+			JavaFileObject file = this.processingEnv.getFiler().createSourceFile(name,
+					type);
+			try (Writer writer = file.openWriter()) {
+				writer.write(source(type, name));
+			}
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot write initializer for " + type, e);
+		}
+	}
+
+	private String source(TypeElement type, String name) {
+		String packageName = packageName(type);
+		String simpleName = name.substring(name.lastIndexOf('.') + 1);
+		String typeName = type.getQualifiedName().toString();
+		String beanName = binaryName(type);
+		StringBuilder code = new StringBuilder();
+		if (!packageName.isEmpty()) {
+			code.append("package ").append(packageName).append(";\n\n");
+		}
+		code.append("/**\n * Generated from {@link ").append(typeName)
+				.append("}.\n */\n");
+		code.append("@SuppressWarnings({ \"rawtypes\", \"unchecked\" })\n");
+		code.append("public class ").append(simpleName).append(
+				" implements org.springframework.context.ApplicationContextInitializer<org.springframework.context.support.GenericApplicationContext> {\n\n");
+		code.append("\t@Override\n");
+		code.append(
+				"\tpublic void initialize(org.springframework.context.support.GenericApplicationContext context) {\n");
+		for (TypeElement nested : nested(type)) {
+			code.append("\t\tif (!context.containsBeanDefinition(\"")
+					.append(binaryName(nested)).append("\")) {\n");
+			code.append("\t\t\tnew ").append(initializerName(nested))
+					.append("().initialize(context);\n");
+			code.append("\t\t}\n");
+		}
+		ExecutableElement constructor = constructor(type);
+		code.append("\t\tcontext.registerBean(\"").append(beanName).append("\", ")
+				.append(typeName).append(".class, ")
+				.append(supplier(beanName, constructor, "new " + typeName + "("
+						+ arguments(constructor) + ")"))
+				.append(");\n");
+		for (ExecutableElement method : beanMethods(type)) {
+			String target = method.getModifiers().contains(Modifier.STATIC) ? typeName
+					: "context.getBean(\"" + beanName + "\", " + typeName + ".class)";
+			String methodName = method.getSimpleName().toString();
+			code.append("\t\tcontext.registerBean(\"").append(methodName)
+					.append("\", ").append(erasure(method.getReturnType()))
+					.append(".class, ")
+					.append(supplier(methodName, method, target + "." + methodName
+							+ "(" + arguments(method) + ")"))
+					.append(targetType(typeName, method)).append(");\n");
+		}
+		code.append("\t}\n\n}\n");
+		return code.toString();
+	}
+
+	/**
+	 * A supplier that evaluates the expression provided. If the method or constructor
+	 * declares exceptions they are rethrown as they would be by the bean factory (checked
+	 * exceptions wrapped in a <code>BeanCreationException</code>), since a supplier
+	 * cannot throw them.
+	 */
+	private String supplier(String beanName, ExecutableElement executable,
+			String expression) {
+		if (executable.getThrownTypes().isEmpty()) {
+			return "() -> " + expression;
+		}
+		return "() -> {\n\t\t\ttry {\n\t\t\t\treturn " + expression + ";\n\t\t\t}\n"
+				+ "\t\t\tcatch (RuntimeException | Error e) {\n\t\t\t\tthrow e;\n\t\t\t}\n"
+				+ "\t\t\tcatch (Throwable e) {\n"
+				+ "\t\t\t\tthrow new org.springframework.beans.factory.BeanCreationException(\""
+				+ beanName + "\", \"Cannot create bean\", e);\n\t\t\t}\n\t\t}";
+	}
+
+	/**
+	 * A bean definition customizer that sets the generic return type of the method as the
+	 * target type, so the bean factory can match generic injection points without
+	 * creating the bean. Empty if the return type is not generic (the bean class is
+	 * enough).
+	 */
+	private String targetType(String typeName, ExecutableElement method) {
+		TypeMirror type = method.getReturnType();
+		if (type.getKind() != TypeKind.DECLARED
+				|| ((DeclaredType) type).getTypeArguments().isEmpty()) {
+			return "";
+		}
+		StringBuilder code = new StringBuilder();
+		code.append(", definition -> ((org.springframework.beans.factory.support.RootBeanDefinition) definition)")
+				.append(".setTargetType(org.springframework.core.ResolvableType.forMethodReturnType(")
+				.append("org.springframework.util.ReflectionUtils.findMethod(")
+				.append(typeName).append(".class, \"").append(method.getSimpleName())
+				.append("\"");
+		for (VariableElement param : method.getParameters()) {
+			code.append(", ").append(erasure(param.asType())).append(".class");
+		}
+		code.append(")))");
+		return code.toString();
+	}
+
+	private String arguments(ExecutableElement executable) {
+		StringBuilder args = new StringBuilder();
+		for (VariableElement param : executable.getParameters()) {
+			if (args.length() > 0) {
+				args.append(", ");
+			}
+			TypeMirror type = param.asType();
+			if (isObjectProvider(type)) {
+				TypeMirror target = ((DeclaredType) type).getTypeArguments().get(0);
+				args.append("context.getBeanProvider(").append(erasure(target))
+						.append(".class)");
+			}
+			else if (isNullable(param)) {
+				args.append("context.getBeanProvider(").append(erasure(type))
+						.append(".class).getIfAvailable()");
+			}
+			else {
+				args.append("context.getBean(").append(erasure(type))
+						.append(".class)");
+			}
+		}
+		return args.toString();
+	}
+
+	private boolean isSupported(TypeElement type) {
+		if (type.getModifiers().contains(Modifier.PRIVATE)
+				|| type.getModifiers().contains(Modifier.ABSTRACT)
+				|| type.getKind() != ElementKind.CLASS
+				|| (type.getNestingKind() == NestingKind.MEMBER
+						&& !type.getModifiers().contains(Modifier.STATIC))
+				|| type.getNestingKind() == NestingKind.LOCAL
+				|| type.getNestingKind() == NestingKind.ANONYMOUS) {
+			return false;
+		}
+		if (isAnnotated(type, CONDITIONAL) || hasAnnotation(type, IMPORT)
+				|| hasAnnotation(type, ENABLE_CONFIGURATION_PROPERTIES)) {
+			return false;
+		}
+		ExecutableElement constructor = constructor(type);
+		if (constructor == null || !isSupported(constructor)) {
+			return false;
+		}
+		if (hasInheritedBeanMethods(type)) {
+			return false;
+		}
+		Set<String> names = new HashSet<>();
+		for (ExecutableElement method : beanMethods(type)) {
+			if (!names.add(method.getSimpleName().toString()) || !isSupported(method)
+					|| isAnnotated(method, CONDITIONAL)) {
+				return false;
+			}
+			TypeKind kind = method.getReturnType().getKind();
+			if (kind != TypeKind.DECLARED && kind != TypeKind.ARRAY) {
+				return false;
+			}
+		}
+		for (TypeElement nested : nested(type)) {
+			if (!isSupported(nested)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean isSupported(ExecutableElement executable) {
+		if (executable.getModifiers().contains(Modifier.PRIVATE)) {
+			return false;
+		}
+		for (VariableElement param : executable.getParameters()) {
+			if (isAnnotated(param, QUALIFIER) || isAnnotated(param, VALUE)
+					|| isAnnotated(param, NAMED) || isAnnotated(param, INJECT_QUALIFIER)) {
+				// Not a plain lookup by type
+				return false;
+			}
+			TypeMirror type = param.asType();
+			if (isObjectProvider(type)) {
+				type = ((DeclaredType) type).getTypeArguments().get(0);
+			}
+			if (type.getKind() != TypeKind.DECLARED
+					|| !((DeclaredType) type).getTypeArguments().isEmpty()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Whether a parameter is allowed to be missing: any annotation called
+	 * <code>Nullable</code> counts (the same as for a <code>MethodParameter</code>).
+	 */
+	private boolean isNullable(VariableElement param) {
+		for (AnnotationMirror mirror : param.getAnnotationMirrors()) {
+			if (mirror.getAnnotationType().asElement().getSimpleName()
+					.contentEquals("Nullable")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean isObjectProvider(TypeMirror type) {
+		if (type.getKind() != TypeKind.DECLARED) {
+			return false;
+		}
+		DeclaredType declared = (DeclaredType) type;
+		return ((TypeElement) declared.asElement()).getQualifiedName()
+				.contentEquals(OBJECT_PROVIDER)
+				&& declared.getTypeArguments().size() == 1;
+	}
+
+	/**
+	 * The constructor to use: the one marked <code>@Autowired</code>, the only one, or the
+	 * default one (the same as the reflective path). If there is no obvious choice returns
+	 * null.
+	 */
+	private ExecutableElement constructor(TypeElement type) {
+		List<ExecutableElement> constructors = ElementFilter
+				.constructorsIn(type.getEnclosedElements());
+		ExecutableElement autowired = null;
+		for (ExecutableElement constructor : constructors) {
+			if (hasAnnotation(constructor, AUTOWIRED)) {
+				if (autowired != null) {
+					return null;
+				}
+				autowired = constructor;
+			}
+		}
+		if (autowired != null) {
+			return autowired;
+		}
+		if (constructors.size() == 1) {
+			return constructors.get(0);
+		}
+		for (ExecutableElement constructor : constructors) {
+			if (constructor.getParameters().isEmpty()) {
+				return constructor;
+			}
+		}
+		return null;
+	}
+
+	private List<ExecutableElement> beanMethods(TypeElement type) {
+		List<ExecutableElement> methods = new ArrayList<>();
+		for (ExecutableElement method : ElementFilter
+				.methodsIn(type.getEnclosedElements())) {
+			if (isAnnotated(method, BEAN)) {
+				methods.add(method);
+			}
+		}
+		return methods;
+	}
+
+	private boolean hasInheritedBeanMethods(TypeElement type) {
+		TypeMirror superclass = type.getSuperclass();
+		while (superclass.getKind() == TypeKind.DECLARED) {
+			TypeElement element = (TypeElement) ((DeclaredType) superclass).asElement();
+			if (!beanMethods(element).isEmpty()) {
+				return true;
+			}
+			superclass = element.getSuperclass();
+		}
+		return false;
+	}
+
+	private List<TypeElement> nested(TypeElement type) {
+		List<TypeElement> nested = new ArrayList<>();
+		for (TypeElement member : ElementFilter.typesIn(type.getEnclosedElements())) {
+			if (member.getModifiers().contains(Modifier.STATIC)
+					&& (isAnnotated(member, CONFIGURATION)
+							|| !beanMethods(member).isEmpty())) {
+				nested.add(member);
+			}
+		}
+		return nested;
+	}
+
+	private boolean hasAnnotation(Element element, String annotation) {
+		for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+			if (name(mirror).equals(annotation)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean isAnnotated(Element element, String annotation) {
+		return isAnnotated(element, annotation, new HashSet<>());
+	}
+
+	private boolean isAnnotated(Element element, String annotation, Set<String> seen) {
+		for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+			String name = name(mirror);
+			if (name.equals(annotation)) {
+				return true;
+			}
+			if (!name.startsWith("java.lang.annotation") && seen.add(name)
+					&& isAnnotated(mirror.getAnnotationType().asElement(), annotation,
+							seen)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private String name(AnnotationMirror mirror) {
+		return ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName()
+				.toString();
+	}
+
+	private String erasure(TypeMirror type) {
+		return this.processingEnv.getTypeUtils().erasure(type).toString();
+	}
+
+	private String packageName(TypeElement type) {
+		PackageElement pkg = this.processingEnv.getElementUtils().getPackageOf(type);
+		return pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+	}
+
+	private String binaryName(TypeElement type) {
+		return this.processingEnv.getElementUtils().getBinaryName(type).toString();
+	}
+
+	private String initializerName(TypeElement type) {
+		String packageName = packageName(type);
+		String binaryName = binaryName(type);
+		String simpleName = packageName.isEmpty() ? binaryName
+				: binaryName.substring(packageName.length() + 1);
+		return (packageName.isEmpty() ? "" : packageName + ".")
+				+ simpleName.replace('$', '_') + SUFFIX;
+	}
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.reflect.processor;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import javax.tools.JavaFileObject;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.Compiler;
+import com.google.testing.compile.JavaFileObjects;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class ConfigurationInitializerProcessorTests {
+
+	@Test
+	public void simpleConfiguration() throws Exception {
+		Compilation compilation = compile("com.example.SimpleConfiguration",
+				"package com.example;",
+				"@org.springframework.context.annotation.Configuration",
+				"public class SimpleConfiguration {",
+				"  @org.springframework.context.annotation.Bean",
+				"  public StringBuilder builder(String value) {",
+				"    return new StringBuilder(value);", "  }", "}");
+		assertThat(compilation.status()).isEqualTo(Compilation.Status.SUCCESS);
+		assertThat(generated(compilation, "com.example.SimpleConfigurationInitializer"))
+				.contains("new com.example.SimpleConfiguration()")
+				.contains("context.getBean(java.lang.String.class)");
+	}
+
+	@Test
+	public void nullableParameter() throws Exception {
+		Compilation compilation = compile("com.example.NullableConfiguration",
+				"package com.example;",
+				"@org.springframework.context.annotation.Configuration",
+				"public class NullableConfiguration {",
+				"  @org.springframework.context.annotation.Bean",
+				"  public StringBuilder builder(",
+				"      @org.springframework.lang.Nullable String value) {",
+				"    return new StringBuilder(value == null ? \"\" : value);", "  }",
+				"}");
+		assertThat(compilation.status()).isEqualTo(Compilation.Status.SUCCESS);
+		assertThat(
+				generated(compilation, "com.example.NullableConfigurationInitializer"))
+						.contains("context.getBeanProvider(java.lang.String.class)"
+								+ ".getIfAvailable()");
+	}
+
+	@Test
+	public void qualifiedParameter() throws Exception {
+		Compilation compilation = compile("com.example.QualifiedConfiguration",
+				"package com.example;",
+				"@org.springframework.context.annotation.Configuration",
+				"public class QualifiedConfiguration {",
+				"  @org.springframework.context.annotation.Bean",
+				"  public StringBuilder builder(",
+				"      @org.springframework.beans.factory.annotation.Qualifier(\"foo\") String value) {",
+				"    return new StringBuilder(value);", "  }", "}");
+		assertThat(compilation.status()).isEqualTo(Compilation.Status.SUCCESS);
+		assertThat(compilation
+				.generatedSourceFile("com.example.QualifiedConfigurationInitializer"))
+						.isEmpty();
+	}
+
+	@Test
+	public void valueParameter() throws Exception {
+		Compilation compilation = compile("com.example.ValueConfiguration",
+				"package com.example;",
+				"@org.springframework.context.annotation.Configuration",
+				"public class ValueConfiguration {",
+				"  @org.springframework.context.annotation.Bean",
+				"  public StringBuilder builder(",
+				"      @org.springframework.beans.factory.annotation.Value(\"${foo}\") String value) {",
+				"    return new StringBuilder(value);", "  }", "}");
+		assertThat(compilation.status()).isEqualTo(Compilation.Status.SUCCESS);
+		assertThat(compilation
+				.generatedSourceFile("com.example.ValueConfigurationInitializer"))
+						.isEmpty();
+	}
+
+	@Test
+	public void beanMethodWithCheckedException() throws Exception {
+		Compilation compilation = compile("com.example.ThrowingConfiguration",
+				"package com.example;",
+				"@org.springframework.context.annotation.Configuration",
+				"public class ThrowingConfiguration {",
+				"  @org.springframework.context.annotation.Bean",
+				"  public StringBuilder builder() throws java.io.IOException {",
+				"    return new StringBuilder();", "  }", "}");
+		assertThat(compilation.status()).isEqualTo(Compilation.Status.SUCCESS);
+		assertThat(
+				generated(compilation, "com.example.ThrowingConfigurationInitializer"))
+						.contains("BeanCreationException(\"builder\"");
+	}
+
+	@Test
+	public void constructorWithCheckedException() throws Exception {
+		Compilation compilation = compile("com.example.ThrowingConfiguration",
+				"package com.example;",
+				"@org.springframework.context.annotation.Configuration",
+				"public class ThrowingConfiguration {",
+				"  public ThrowingConfiguration() throws Exception {", "  }",
+				"  @org.springframework.context.annotation.Bean",
+				"  public StringBuilder builder() {",
+				"    return new StringBuilder();", "  }", "}");
+		assertThat(compilation.status()).isEqualTo(Compilation.Status.SUCCESS);
+		assertThat(
+				generated(compilation, "com.example.ThrowingConfigurationInitializer"))
+						.contains("BeanCreationException(\"com.example.ThrowingConfiguration\"");
+	}
+
+	@Test
+	public void autowiredConstructor() throws Exception {
+		Compilation compilation = compile("com.example.AutowiredConfiguration",
+				"package com.example;",
+				"@org.springframework.context.annotation.Configuration",
+				"public class AutowiredConfiguration {",
+				"  private final String value;",
+				"  public AutowiredConfiguration() {", "    this(\"default\");", "  }",
+				"  @org.springframework.beans.factory.annotation.Autowired",
+				"  public AutowiredConfiguration(String value) {",
+				"    this.value = value;", "  }",
+				"  @org.springframework.context.annotation.Bean",
+				"  public StringBuilder builder() {",
+				"    return new StringBuilder(this.value);", "  }", "}");
+		assertThat(compilation.status()).isEqualTo(Compilation.Status.SUCCESS);
+		assertThat(
+				generated(compilation, "com.example.AutowiredConfigurationInitializer"))
+						.contains("new com.example.AutowiredConfiguration("
+								+ "context.getBean(java.lang.String.class))");
+	}
+
+	@Test
+	public void ambiguousAutowiredConstructors() throws Exception {
+		Compilation compilation = compile("com.example.AmbiguousConfiguration",
+				"package com.example;",
+				"@org.springframework.context.annotation.Configuration",
+				"public class AmbiguousConfiguration {",
+				"  public AmbiguousConfiguration() {", "  }",
+				"  @org.springframework.beans.factory.annotation.Autowired(required = false)",
+				"  public AmbiguousConfiguration(String value) {", "  }",
+				"  @org.springframework.beans.factory.annotation.Autowired(required = false)",
+				"  public AmbiguousConfiguration(Integer value) {", "  }", "}");
+		assertThat(compilation.status()).isEqualTo(Compilation.Status.SUCCESS);
+		assertThat(compilation
+				.generatedSourceFile("com.example.AmbiguousConfigurationInitializer"))
+						.isEmpty();
+	}
+
+	@Test
+	public void conditionalConfiguration() throws Exception {
+		Compilation compilation = compile("com.example.ConditionalConfiguration",
+				"package com.example;",
+				"@org.springframework.context.annotation.Configuration",
+				"@org.springframework.context.annotation.Conditional(ConditionalConfiguration.Never.class)",
+				"public class ConditionalConfiguration {",
+				"  public static class Never implements org.springframework.context.annotation.Condition {",
+				"    public boolean matches(org.springframework.context.annotation.ConditionContext context,",
+				"        org.springframework.core.type.AnnotatedTypeMetadata metadata) {",
+				"      return false;", "    }", "  }", "}");
+		assertThat(compilation.status()).isEqualTo(Compilation.Status.SUCCESS);
+		assertThat(compilation
+				.generatedSourceFile("com.example.ConditionalConfigurationInitializer"))
+						.isEmpty();
+	}
+
+	private Compilation compile(String name, String... lines) {
+		return Compiler.javac().withProcessors(new ConfigurationInitializerProcessor())
+				.compile(JavaFileObjects.forSourceLines(name, lines));
+	}
+
+	private String generated(Compilation compilation, String name) throws IOException {
+		Optional<JavaFileObject> file = compilation.generatedSourceFile(name);
+		assertThat(file).isPresent();
+		return file.get().getCharContent(true).toString();
+	}
+
+}